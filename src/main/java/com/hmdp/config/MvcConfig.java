@@ -1,13 +1,16 @@
 package com.hmdp.config;
 
+import com.hmdp.interceptor.AdminInterceptor;
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * @Author: xuyuchao
@@ -20,6 +23,10 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    //管理员用户id
+    @Value("${hmdp.admin.user-ids:}")
+    private List<Long> adminIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         //拦截任意请求,用于刷新token
@@ -38,5 +45,9 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/voucher/**"
                 )
                 .order(1);
+        //拦截管理接口,只允许管理员访问
+        registry.addInterceptor(new AdminInterceptor(adminIds))
+                .addPathPatterns("/voucher/seckill/preload/**")
+                .order(2);
     }
 }
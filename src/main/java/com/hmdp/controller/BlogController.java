@@ -52,6 +52,19 @@ public class BlogController {
         return Result.ok(records);
     }
 
+    /**
+     * 游标分页查询我的博客(不查询总数,深分页耗时不变)
+     * @param after 上一页返回的游标,第一页不传
+     * @param size 每页数量
+     * @return 博客列表和下一页游标
+     */
+    @GetMapping("/of/me/cursor")
+    public Result queryMyBlogCursor(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", defaultValue = "" + SystemConstants.MAX_PAGE_SIZE) Integer size) {
+        return blogService.queryBlogByUserCursor(UserHolder.getUser().getId(), after, size);
+    }
+
     @GetMapping("/hot")
     public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
         return blogService.queryHotBlog(current);
@@ -79,6 +92,21 @@ public class BlogController {
         return Result.ok(records);
     }
 
+    /**
+     * 游标分页查询用户的博客(不查询总数,深分页耗时不变)
+     * @param id 用户id
+     * @param after 上一页返回的游标,第一页不传
+     * @param size 每页数量
+     * @return 博客列表和下一页游标
+     */
+    @GetMapping("/of/user/cursor")
+    public Result queryBlogByUserIdCursor(
+            @RequestParam("id") Long id,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", defaultValue = "" + SystemConstants.MAX_PAGE_SIZE) Integer size) {
+        return blogService.queryBlogByUserCursor(id, after, size);
+    }
+
     @GetMapping("of/follow")
     public Result queryBlogOfFollow(
             @RequestParam("lastId") Long max,@RequestParam(value = "offset",defaultValue = "0") Integer offset
@@ -0,0 +1,80 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.cache.CacheRebuildScheduler;
+import com.hmdp.utils.cache.HotKeyDetector;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.feed.FeedFanoutWorker;
+import com.hmdp.utils.seckill.SeckillOrderRecovery;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-21:10
+ * @Description: 运行指标查询(供运维监控采集)
+ */
+@RestController
+@RequestMapping("/monitor")
+public class MonitorController {
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private SeckillOrderRecovery seckillOrderRecovery;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+    @Resource
+    private FeedFanoutWorker feedFanoutWorker;
+
+    /**
+     * 缓存异步重建指标:队列深度、重建耗时、失败次数等
+     * @return 指标数据
+     */
+    @GetMapping("/cache/rebuild")
+    public Result cacheRebuildMetrics() {
+        return Result.ok(cacheRebuildScheduler.metrics());
+    }
+
+    /**
+     * 热点key:滑动窗口内访问次数最多的前K个key
+     * @return 指标数据
+     */
+    @GetMapping("/cache/hotkeys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.topK());
+    }
+
+    /**
+     * 秒杀订单消息恢复指标:认领/重试/死信数量,各队列pending list的消息数量和最早消息的等待时间
+     * @return 指标数据
+     */
+    @GetMapping("/seckill/orders")
+    public Result seckillOrderMetrics() {
+        return Result.ok(seckillOrderRecovery.metrics());
+    }
+
+    /**
+     * 分布式锁指标:获取/超时次数、等待时间、持有时间、看门狗续期次数
+     * @return 指标数据
+     */
+    @GetMapping("/locks")
+    public Result lockMetrics() {
+        return Result.ok(redisLockFactory.metrics());
+    }
+
+    /**
+     * feed流推送指标:推送速度、每页耗时、积压的推送任务数量
+     * @return 指标数据
+     */
+    @GetMapping("/feed/fanout")
+    public Result feedFanoutMetrics() {
+        return Result.ok(feedFanoutWorker.metrics());
+    }
+}
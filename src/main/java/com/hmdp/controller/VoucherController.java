@@ -30,7 +30,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -45,6 +45,16 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 预热秒杀券(秒杀开始前调用,各节点加载时间窗口)
+     * @param voucherId 优惠券id
+     * @return 无
+     */
+    @PostMapping("seckill/preload/{id}")
+    public Result preloadSeckillVoucher(@PathVariable("id") Long voucherId) {
+        return voucherService.preloadSeckillVoucher(voucherId);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
@@ -0,0 +1,33 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-06:20
+ * @Description: 游标分页结果,next为下一页的游标(下一页请求的after参数),没有下一页时为空
+ */
+@Data
+public class CursorResult {
+    private List<?> list;
+    private String next;
+
+    /**
+     * 由多查询一条的结果构造分页结果:查询 size + 1 条,多出的一条说明还有下一页
+     * @param rows 查询结果(最多 size + 1 条)
+     * @param size 每页数量
+     * @param cursor 取游标的函数(排序字段)
+     */
+    public static <T> CursorResult of(List<T> rows, int size, Function<T, ?> cursor) {
+        CursorResult result = new CursorResult();
+        if(rows.size() > size) {
+            rows = rows.subList(0, size);
+            result.setNext(String.valueOf(cursor.apply(rows.get(size - 1))));
+        }
+        result.setList(rows);
+        return result;
+    }
+}
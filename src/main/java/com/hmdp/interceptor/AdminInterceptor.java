@@ -0,0 +1,42 @@
+package com.hmdp.interceptor;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-11:50
+ * @Description: 管理接口拦截器
+ * 用户表没有角色字段,管理员由配置 hmdp.admin.user-ids 指定;未登录返回401,不是管理员返回403
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminIds;
+
+    public AdminInterceptor(List<Long> adminIds) {
+        this.adminIds = new HashSet<>(adminIds);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //1.用户信息由刷新token的拦截器保存到ThreadLocal
+        UserDTO user = UserHolder.getUser();
+        if(user == null) {
+            response.setStatus(401);
+            return false;
+        }
+        //2.判断是否是管理员
+        if(!adminIds.contains(user.getId())) {
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 批量写入点赞数(一条UPDATE语句,写入绝对值,重复执行结果相同)
+     * @param counts 博客id -> 点赞数
+     * @return 影响行数
+     */
+    int updateLikedBatch(@Param("counts") Map<Long, Long> counts);
 }
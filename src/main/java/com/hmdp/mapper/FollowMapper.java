@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Follow;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,21 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface FollowMapper extends BaseMapper<Follow> {
 
+    /**
+     * 按用户id范围分页查询粉丝id(键集分页,走 idx_follow_user 索引,不使用OFFSET)
+     * @param followUserId 被关注的用户id
+     * @param afterUserId 上一页最后一个粉丝id(不包含)
+     * @param limit 每页数量
+     * @return 粉丝id,升序
+     */
+    List<Long> listFollowerIds(@Param("followUserId") Long followUserId, @Param("afterUserId") Long afterUserId,
+                               @Param("limit") int limit);
+
+    /**
+     * 统计粉丝数量,最多统计到limit(粉丝很多时不扫描整个索引范围)
+     * @param followUserId 被关注的用户id
+     * @param limit 统计上限
+     * @return min(粉丝数量, limit)
+     */
+    int countFollowers(@Param("followUserId") Long followUserId, @Param("limit") int limit);
 }
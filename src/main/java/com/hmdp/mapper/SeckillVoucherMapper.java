@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 批量扣减库存(一条UPDATE语句),库存不足的优惠券不扣减
+     * @param decrements 优惠券id -> 扣减数量
+     * @return 影响行数(小于优惠券数量说明有优惠券库存不足)
+     */
+    int decrStockBatch(@Param("decrements") Map<Long, Integer> decrements);
 }
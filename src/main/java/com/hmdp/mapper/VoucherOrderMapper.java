@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 批量插入订单(一条多行INSERT语句)
+     * @param orders 订单(id、用户id、优惠券id)
+     * @return 影响行数
+     */
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
+
+    /**
+     * 插入订单,违反唯一索引(订单id或一人一单)时忽略(INSERT ... ON DUPLICATE KEY UPDATE,不会像INSERT IGNORE那样把其他错误降级为警告)
+     * @param order 订单(id、用户id、优惠券id)
+     * @return 插入的行数,重复时为0(连接参数 useAffectedRows=true)
+     */
+    int insertIfAbsent(@Param("order") VoucherOrder order);
 }
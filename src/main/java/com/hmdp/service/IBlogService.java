@@ -26,4 +26,6 @@ public interface IBlogService extends IService<Blog> {
     Result saveBolg(Blog blog);
     //滚动分页查询
     Result queryBlogOfFollow(Long max, Integer offset);
+    //根据用户游标分页查询博客
+    Result queryBlogByUserCursor(Long userId, Long after, Integer size);
 }
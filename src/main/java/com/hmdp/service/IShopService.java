@@ -17,4 +17,10 @@ public interface IShopService extends IService<Shop> {
     Result queryById(Long id);
     //更新商铺信息
     Result updateShopById(Shop shop);
+    //新增商铺信息
+    Result saveShop(Shop shop);
+    //根据商铺类型分页查询,传入坐标时按距离排序
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+    //根据商铺类型游标分页查询
+    Result queryShopByTypeCursor(Integer typeId, Long after, Integer size);
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -20,4 +22,7 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     //创建订单事务方法(异步)
     void asyncCreateVoucherOrder(VoucherOrder voucherOrder);
+
+    //批量创建订单事务方法(异步)
+    void asyncCreateVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -1,37 +1,52 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.cache.BloomFilterRegistry;
+import com.hmdp.utils.cache.HotKeyDetector;
+import com.hmdp.utils.feed.FeedFanout;
+import com.hmdp.utils.feed.FeedTimeline;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_USER_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_USER_SIZE;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_USER_TTL;
 
 /**
  * <p>
@@ -50,7 +65,32 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     StringRedisTemplate stringRedisTemplate;
 
     @Autowired
-    IFollowService followService;
+    BloomFilterRegistry bloomFilters;
+
+    @Autowired
+    CacheClient cacheClient;
+
+    @Autowired
+    HotKeyDetector hotKeyDetector;
+
+    @Autowired
+    BlogHotRanking blogHotRanking;
+
+    @Autowired
+    FeedFanout feedFanout;
+
+    @Autowired
+    FeedTimeline feedTimeline;
+
+    /**
+     * 点赞/取消点赞的Lua脚本(只访问博客的点赞集合)
+     */
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
 
     /**
      * 分页查询首页热点博客
@@ -59,17 +99,21 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
+        //1.从热度排行榜分页查询博客id,再批量查询博客(本地缓存 -> MGET -> 一次listByIds)
+        List<Long> ids = blogHotRanking.page(current, SystemConstants.MAX_PAGE_SIZE);
+        if(ids != null) {
+            List<Blog> blogs = queryBlogsInOrder(ids);
+            fillBlogs(blogs);
+            return Result.ok(blogs);
+        }
+        //2.排行榜尚未初始化,按点赞数查询数据库
         Page<Blog> page = this.query()
                 .orderByDesc("liked")
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 批量查询用户以及是否点过赞
+        fillBlogs(records);
         return Result.ok(records);
     }
 
@@ -80,57 +124,57 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Long id) {
-        Blog blog = this.getById(id);
-        if(blog == null) {
+        //查询缓存(布隆过滤器拦截不存在的博客id,热点博客会被提升到进程内缓存)
+        Blog cached = cacheClient.queryWithPassThrough(RedisConstants.CACHE_BLOG_KEY, id, Blog.class, this::getById, RedisConstants.CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        if(cached == null) {
             return Result.fail("博客不存在!");
         }
-        queryBlogUser(blog);
-        isBlogLiked(blog);
+        //缓存对象可能被多个请求共享,复制后再填充用户信息和点赞状态
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
+        fillBlogs(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
-    private void isBlogLiked(Blog blog) {
-        //获取当前登录用户
-        UserDTO user = UserHolder.getUser();
-        //用户未登录,无需查询用户是否是否点过赞
-        if(user == null) {
-            return;
-        }
-        Long userId = user.getId();
-        //判断当前博客是否被点赞,填充字段 isLike
-        Double score = stringRedisTemplate.opsForZSet().score(BLOG_LIKED_KEY + blog.getId(), userId.toString());
-        if(score != null) {
-            blog.setIsLike(Boolean.TRUE);
-        }else {
-            blog.setIsLike(Boolean.FALSE);
-        }
-    }
-
     /**
      * 点赞博客
+     * 点赞状态由Lua脚本在博客的点赞集合中原子切换,点赞数由 BlogLikeFlusher 定期批量写回数据库
+     * 脚本只访问一个key,用户最近点赞记录、点赞数增量、热度排行位于其他slot,在脚本之后分别更新(集群模式下不会CROSSSLOT)
      * @param id
      * @return
      */
     @Override
     public Result likeBlog(Long id) {
-        //1.获取当前用户id
+        //1.布隆过滤器拦截不存在的博客id
+        if(!bloomFilters.mightContain(RedisConstants.BLOOM_BLOG_KEY, id)) {
+            return Result.fail("博客不存在!");
+        }
+        //2.获取当前用户id
         Long userId = UserHolder.getUser().getId();
-        String key = BLOG_LIKED_KEY + id;
-        //2.判断用户是否点赞过了
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        //2.1 该用户没有点赞过,则点赞数 + 1 ,且将该用户id添加到zset集合中(zset能按score排序,便于做排行榜)
-        if(score == null) {
-            boolean isSuccess = this.update().setSql("liked = liked + 1").eq("id", id).update();
-            if(isSuccess) {
-                stringRedisTemplate.opsForZSet().add(key,userId.toString(),System.currentTimeMillis());
-            }
-        }else {
-            //3.该用户点赞过了,则点赞数 - 1 ,且将该用户id从set集合中移除
-            boolean isSuccess = this.update().setSql("liked = liked - 1").eq("id", id).update();
-            if(isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key,userId.toString());
-            }
+        String recentKey = BLOG_LIKED_USER_KEY + userId;
+        //3.先从用户最近点赞记录中删除:最近点赞记录中的博客一定已点赞,中途宕机只会缺少记录,查询时回退到博客的点赞集合
+        stringRedisTemplate.opsForZSet().remove(recentKey, id.toString());
+        //4.执行lua脚本:未点赞过则点赞,点赞过则取消点赞
+        List<?> result = stringRedisTemplate.execute(LIKE_SCRIPT, Collections.singletonList(BLOG_LIKED_KEY + id),
+                userId.toString(), String.valueOf(System.currentTimeMillis()));
+        if(result == null || result.size() < 2) {
+            return Result.fail("点赞失败!");
         }
+        boolean liked = ((Number) result.get(0)).intValue() == 1;
+        long likedAt = ((Number) result.get(1)).longValue();
+        //5.一次pipeline记录用户最近点赞以及点赞数增量
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawRecentKey = recentKey.getBytes(StandardCharsets.UTF_8);
+            byte[] blogId = id.toString().getBytes(StandardCharsets.UTF_8);
+            if(liked) {
+                connection.zAdd(rawRecentKey, likedAt, blogId);
+                connection.zRemRange(rawRecentKey, 0, -BLOG_LIKED_USER_SIZE - 1);
+                connection.expire(rawRecentKey, TimeUnit.DAYS.toSeconds(BLOG_LIKED_USER_TTL));
+            }
+            connection.hIncrBy(RedisConstants.BLOG_LIKE_DELTA_KEY.getBytes(StandardCharsets.UTF_8), blogId, liked ? 1 : -1);
+            return null;
+        });
+        //6.更新热度排行(取消点赞时扣除当初点赞时加上的热度)
+        blogHotRanking.onLiked(id, likedAt, liked);
         return Result.ok();
     }
 
@@ -161,7 +205,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     /**
-     * 保存博客并实现feed流推模式(将博客信息推送到粉丝收件箱)
+     * 保存博客并实现feed流推拉结合(普通作者异步推送到粉丝收件箱,大V写入发件箱由粉丝拉取)
      * @param blog
      * @return
      */
@@ -175,21 +219,18 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(!isSuccess) {
             return Result.fail("保存博客信息失败!");
         }
-        //获取当前登录用户的所有粉丝
-        List<Follow> follows = followService.list(
-                new LambdaQueryWrapper<Follow>()
-                        .eq(Follow::getFollowUserId, user.getId())
-        );
-        //将博客id推送到所有粉丝收件箱中
-        follows.forEach(follow -> {
-            stringRedisTemplate.opsForZSet().add(FEED_KEY + follow.getUserId(),blog.getId().toString(), System.currentTimeMillis());
-        });
+        //写入布隆过滤器
+        bloomFilters.add(RedisConstants.BLOOM_BLOG_KEY, blog.getId());
+        //加入热度排行榜
+        blogHotRanking.onCreated(blog.getId());
+        //推送到粉丝收件箱(异步)或写入大V发件箱,请求耗时与粉丝数量无关
+        feedFanout.publish(user.getId(), blog.getId(), System.currentTimeMillis());
         // 返回id
         return Result.ok(blog.getId());
     }
 
     /**
-     * 滚动分页查询(将收件箱中关注的用户博客id做分页查询)
+     * 滚动分页查询(收件箱与关注的大V发件箱归并后做分页查询)
      * @param max
      * @param offset
      * @return
@@ -198,9 +239,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result queryBlogOfFollow(Long max, Integer offset) {
         //1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        //2.查询当前用户收件箱(ZREVRANGEBYSCORE key max min limit offset count)
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(FEED_KEY + userId, 0, max, offset, 2);
+        //2.查询当前用户收件箱以及关注的大V发件箱(ZREVRANGEBYSCORE key max min limit offset count)
+        List<ZSetOperations.TypedTuple<String>> typedTuples = feedTimeline.page(userId, max, offset, 2);
         if(typedTuples == null || typedTuples.isEmpty()) {
             return Result.ok();
         }
@@ -221,15 +261,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        //4.根据id查询blog
-        String idStr = StrUtil.join(",",ids);
-        List<Blog> blogs = this.query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        //4.根据id批量查询blog(本地缓存 -> MGET -> 一次listByIds),按收件箱顺序排列
+        List<Blog> blogs = queryBlogsInOrder(ids);
 
-        //5.查询每个博客的关联用户以及是否点过赞
-        blogs.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        //5.批量查询博客的关联用户以及是否点过赞
+        fillBlogs(blogs);
         //6.封装并返回
         ScrollResult r = new ScrollResult();
         r.setList(blogs);
@@ -238,12 +274,128 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(r);
     }
 
-    private void queryBlogUser(Blog blog) {
-        //根据博客的用户id获取用户信息
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
+    /**
+     * 根据用户游标分页查询博客(按id倒序,最新的在前)
+     * WHERE user_id = ? AND id < after ORDER BY id DESC LIMIT size + 1,走 idx_user_id(user_id, id) 索引定位,
+     * 不执行COUNT(*),耗时与页数无关
+     * @param userId 用户id
+     * @param after 上一页最后一篇博客id,第一页为空
+     * @param size 每页数量
+     * @return 博客列表和下一页游标
+     */
+    @Override
+    public Result queryBlogByUserCursor(Long userId, Long after, Integer size) {
+        int limit = Math.min(Math.max(size, 1), SystemConstants.MAX_PAGE_SIZE);
+        List<Blog> blogs = this.query()
+                .eq("user_id", userId)
+                .lt(after != null, "id", after)
+                .orderByDesc("id")
+                .last("LIMIT " + (limit + 1))
+                .list();
+        return Result.ok(CursorResult.of(blogs, limit, Blog::getId));
+    }
+
+    /**
+     * 批量填充博客的用户信息以及当前用户是否点过赞,一页博客的Redis/数据库访问次数为常数
+     * @param blogs 博客列表
+     */
+    private void fillBlogs(List<Blog> blogs) {
+        if(blogs.isEmpty()) {
+            return;
+        }
+        //1.批量查询博客作者(本地缓存 -> MGET -> 一次listByIds)
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = cacheClient.queryBatch(RedisConstants.CACHE_USER_KEY, userIds, UserDTO.class,
+                this::loadUsers, RedisConstants.CACHE_USER_TTL, TimeUnit.MINUTES);
         //填充博客的用户姓名以及用户头像字段(便于前端显示)
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+        blogs.forEach(blog -> {
+            UserDTO user = users.get(blog.getUserId());
+            if(user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        });
+        //2.判断当前用户是否点过赞
+        isBlogLiked(blogs);
+    }
+
+    /**
+     * 批量判断当前用户是否点过赞,填充字段 isLike
+     * 1.一次pipeline查询用户最近点赞的博客(同一个key)
+     * 2.未命中的博客(点赞时间较早已被淘汰或从未点赞)再用一次pipeline查询博客的点赞集合
+     * 各博客的点赞集合位于不同的slot,使用pipeline而不是多key的Lua脚本,集群模式下不会CROSSSLOT
+     * @param blogs 博客列表
+     */
+    private void isBlogLiked(List<Blog> blogs) {
+        //获取当前登录用户
+        UserDTO user = UserHolder.getUser();
+        //用户未登录,无需查询用户是否是否点过赞
+        if(user == null || blogs.isEmpty()) {
+            return;
+        }
+        byte[] userId = user.getId().toString().getBytes(StandardCharsets.UTF_8);
+        byte[] recentKey = (BLOG_LIKED_USER_KEY + user.getId()).getBytes(StandardCharsets.UTF_8);
+        //1.查询用户最近点赞的博客
+        List<Object> recent = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                connection.zScore(recentKey, blog.getId().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        List<Blog> misses = new ArrayList<>();
+        for (int i = 0; i < blogs.size(); i++) {
+            boolean liked = recent.get(i) != null;
+            blogs.get(i).setIsLike(liked);
+            if(!liked) {
+                misses.add(blogs.get(i));
+            }
+        }
+        if(misses.isEmpty()) {
+            return;
+        }
+        //2.未命中的博客查询博客的点赞集合
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : misses) {
+                String key = BLOG_LIKED_KEY + blog.getId();
+                hotKeyDetector.record(key);
+                connection.zScore(key.getBytes(StandardCharsets.UTF_8), userId);
+            }
+            return null;
+        });
+        for (int i = 0; i < misses.size(); i++) {
+            misses.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    /**
+     * 根据id集合批量查询用户(缓存未命中时使用)
+     */
+    private Map<Long, UserDTO> loadUsers(Collection<Long> ids) {
+        return userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class)));
+    }
+
+    /**
+     * 根据id批量查询博客,按ids的顺序排列,不存在的博客被忽略
+     */
+    private List<Blog> queryBlogsInOrder(List<Long> ids) {
+        Map<Long, Blog> blogMap = cacheClient.queryBatch(RedisConstants.CACHE_BLOG_KEY, ids, Blog.class,
+                this::loadBlogs, RedisConstants.CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Blog blog = blogMap.get(id);
+            if(blog != null) {
+                //缓存对象可能被多个请求共享,复制后再填充
+                blogs.add(BeanUtil.copyProperties(blog, Blog.class));
+            }
+        }
+        return blogs;
+    }
+
+    /**
+     * 根据id集合批量查询博客(缓存未命中时使用)
+     */
+    private Map<Long, Blog> loadBlogs(Collection<Long> ids) {
+        return this.listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, Function.identity()));
     }
 }
@@ -1,27 +1,34 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.RedisData;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.cache.BloomFilterRegistry;
+import com.hmdp.utils.geo.LocalShopGeoIndex;
+import com.hmdp.utils.geo.NearbyShop;
+import com.hmdp.utils.geo.ShopGeoIndex;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -38,6 +45,12 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private LocalShopGeoIndex localShopGeoIndex;
 
     /**
      * 根据商铺id查询商铺信息
@@ -68,104 +81,32 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
     /**
      * 1.基于互斥锁实现的缓存击穿优化
+     * 互斥重建已收敛到CacheClient:进程内同一key的并发请求合并为一次加载,跨节点未获取到锁的请求阻塞等待重建完成的通知,
+     * 不再休眠后递归重试,每个key每次过期只查询一次数据库
      * @param id
      * @return
      */
     public Result cacheBreak1(Long id) {
-        //1.查询redis
-        String shopJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + id);
-        //2.redis存在数据,直接返回
-        if(StrUtil.isNotBlank(shopJson)) {
-            //将json序列化为shop对象并返回结果
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return Result.ok(shop);
-        }
-        //若命中redis中的空数据则返回错误信息
-        if("".equals(shopJson)) {
+        Shop shop = cacheClient.queryWithPassThrough(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        if(shop == null) {
             return Result.fail("店铺信息不存在!");
         }
-        Shop shop = null;
-        try {
-            //3.redis中不存在,查询数据库   获取互斥锁,防止在查询数据库期间其他线程也进入,导致数据库压力过大
-            boolean isLock = tryLock(RedisConstants.LOCK_SHOP_KEY + id);
-            //缓存重建
-            if(!isLock) {
-                //未获取到互斥锁,表示有其他线程获取到了互斥锁,休眠一段时间后再次查询Redis
-                Thread.sleep(50);
-                return queryById(id);
-            }
-            shop = this.getById(id);
-            //模拟缓存重建延时
-            Thread.sleep(500);
-            //4.数据库中不存在,将空信息写入redis中,并设置超时时间,防止缓存穿透,再返回错误信息
-            if(shop == null) {
-                stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,"",RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return Result.fail("商铺信息不存在!");
-            }
-            //5.数据库中存在,存入redis中,设置过期时间,并返回数据
-            shopJson = JSONUtil.toJsonStr(shop);
-            stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,shopJson,RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        }catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }finally {
-            //释放互斥锁
-            unLock(RedisConstants.LOCK_SHOP_KEY + id);
-        }
         return Result.ok(shop);
     }
 
 
-    //线程池,用户执行缓存重建任务
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     /**
      * 2.基于逻辑过期时间实现的缓存击穿优化(需提前预热缓存数据)
+     * 逻辑过期重建统一由CacheClient完成,缓存数据使用二进制格式,逻辑过期时间位于固定头部,判断是否过期无需反序列化
      * @param id
      * @return
      */
     public Result cacheBreak2(Long id) {
-        //1.查询redis
-        String shopJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + id);
-        //2.缓存未命中,直接返回空信息(未提前预热)
-        if(StrUtil.isBlank(shopJson)) {
+        Shop shop = cacheClient.cacheBreak(RedisConstants.CACHE_SHOP_KEY, RedisConstants.LOCK_SHOP_KEY, id, Shop.class, 20L, TimeUnit.SECONDS, this::getById);
+        //缓存未命中,直接返回空信息(未提前预热)
+        if(shop == null) {
             return Result.fail("暂无数据");
         }
-        //3.若缓存命中,则把当前缓存json数据序列化为对应对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //4判断缓存数据是否过期
-        //4.1 若逻辑时间未过期,直接返回店铺数据
-        if(expireTime.isAfter(LocalDateTime.now())) {
-            return Result.ok(shop);
-        }
-        //4.2 逻辑时间过期,尝试获取互斥锁
-        //5 获取互斥锁
-        boolean isLock = tryLock(RedisConstants.LOCK_SHOP_KEY + id);
-        if(isLock) {
-            //5.1 获取锁成功,开启新的线程进行缓存重建
-            //此处注意,DoubleCheck,因为你成功获取互斥锁有一种可能是有一个线程刚释放完互斥锁，
-            // 也就证明此时缓存中的数据是新鲜热乎的，此时不需要再去重建缓存，刚刚有线程才重建完(说白了,就是有其他线程也进入了缓存逻辑时间过期代码)
-            redisData = JSONUtil.toBean(shopJson, RedisData.class);
-            shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-            expireTime = redisData.getExpireTime();
-            if(expireTime.isAfter(LocalDateTime.now())) {
-                return Result.ok(shop);
-            }
-
-            //提交缓存重建任务
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    this.saveShopToRedis(id,20L);
-                }catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    unLock(RedisConstants.LOCK_SHOP_KEY + id);
-                }
-            });
-        }
-        //5.2 获取锁失败,说明有其他线程正在缓存重建,最后返回旧数据即可
-        //6 返回旧数据
         return Result.ok(shop);
     }
 
@@ -176,14 +117,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     public void saveShopToRedis(Long id,Long expireSeconds) throws InterruptedException {
         Shop shop = this.getById(id);
-        RedisData redisData = new RedisData();
         //模拟缓存重建延迟
         Thread.sleep(200);
-        //设置逻辑过期时间和店铺数据
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        redisData.setData(shop);
-        //将数据存入redis
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,JSONUtil.toJsonStr(redisData));
+        //设置逻辑过期时间和店铺数据,并存入redis
+        cacheClient.setWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
     }
 
     /**
@@ -214,10 +151,110 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(shop.getId() == null) {
             return Result.fail("商铺编号不能为空!");
         }
+        Shop old = this.getById(shop.getId());
+        if(old == null) {
+            return Result.fail("商铺不存在!");
+        }
         //1.先更新数据库
         this.updateById(shop);
-        //2.再删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        //2.事务提交后再删除缓存(同时广播使各节点本地缓存失效)
+        cacheClient.deleteAfterCommit(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        //3.更新GEO索引(请求中可能只有部分字段,类型和坐标以更新后的数据为准;事务提交后才写入和广播)
+        if(shop.getTypeId() != null || shop.getX() != null || shop.getY() != null) {
+            shopGeoIndex.save(this.getById(shop.getId()), old);
+        }
         return Result.ok();
     }
+
+    /**
+     * 新增商铺信息
+     * @param shop
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        //1.写入数据库
+        this.save(shop);
+        //2.写入布隆过滤器,否则新商铺会被当作不存在的id拦截
+        bloomFilters.add(RedisConstants.BLOOM_SHOP_KEY, shop.getId());
+        //3.写入GEO索引
+        shopGeoIndex.save(shop, null);
+        //4.返回店铺id
+        return Result.ok(shop.getId());
+    }
+
+    /**
+     * 根据商铺类型分页查询
+     * 1.没有坐标:按类型分页查询数据库
+     * 2.有坐标:从GEO索引 shop:geo:{typeId} 中按距离升序查询一页商铺id和距离,再批量查询商铺(本地缓存 -> MGET -> 一次listByIds)
+     *   启用进程内索引(hmdp.shop.geo.local.enabled)且加载完成后,id和距离改为从进程内网格索引查询
+     * @param typeId 商铺类型
+     * @param current 页码
+     * @param x 经度
+     * @param y 纬度
+     * @return 商铺列表
+     */
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        //1.不需要按距离查询
+        if(x == null || y == null) {
+            Page<Shop> page = this.query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        //2.计算分页参数
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        //3.查询附近的商铺id和距离(进程内索引加载完成后不再访问Redis GEO)
+        List<NearbyShop> nearby = localShopGeoIndex.isReady()
+                ? localShopGeoIndex.search(typeId.longValue(), x, y, from, end)
+                : shopGeoIndex.search(typeId.longValue(), x, y, from, end);
+        if(nearby.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        //4.批量查询商铺,按距离顺序填充距离
+        List<Long> ids = nearby.stream().map(NearbyShop::getShopId).collect(Collectors.toList());
+        Map<Long, Shop> shopMap = cacheClient.queryBatch(RedisConstants.CACHE_SHOP_KEY, ids, Shop.class,
+                this::loadShops, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shops = new ArrayList<>(nearby.size());
+        for (NearbyShop n : nearby) {
+            Shop cached = shopMap.get(n.getShopId());
+            if(cached == null) {
+                continue;
+            }
+            //缓存中的对象可能被多个请求共享,复制后再填充距离
+            Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+            shop.setDistance(n.getDistance());
+            shops.add(shop);
+        }
+        return Result.ok(shops);
+    }
+
+    /**
+     * 批量查询商铺(一次listByIds)
+     */
+    private Map<Long, Shop> loadShops(Collection<Long> ids) {
+        return this.listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
+
+    /**
+     * 根据商铺类型游标分页查询(按id升序)
+     * WHERE type_id = ? AND id > after ORDER BY id LIMIT size + 1,走 idx_type_id(type_id, id) 索引定位,
+     * 不执行COUNT(*),耗时与页数无关
+     * @param typeId 商铺类型
+     * @param after 上一页最后一个商铺id,第一页为空
+     * @param size 每页数量
+     * @return 商铺列表和下一页游标
+     */
+    @Override
+    public Result queryShopByTypeCursor(Integer typeId, Long after, Integer size) {
+        int limit = Math.min(Math.max(size, 1), SystemConstants.MAX_PAGE_SIZE);
+        List<Shop> shops = this.query()
+                .eq("type_id", typeId)
+                .gt(after != null, "id", after)
+                .orderByAsc("id")
+                .last("LIMIT " + (limit + 1))
+                .list();
+        return Result.ok(CursorResult.of(shops, limit, Shop::getId));
+    }
 }
@@ -13,6 +13,7 @@ import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.cache.BloomFilterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -40,6 +41,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
 
     /**
      * 发送短信验证码并保存验证码
@@ -96,6 +99,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user.setPhone(phone);
             user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(10));
             this.save(user);
+            bloomFilters.add(BLOOM_USER_KEY, user.getId());
         }
         //7.若数据库中存在该用户则直接登录,并保存用户到session
         // UserDTO userDTO = new UserDTO();
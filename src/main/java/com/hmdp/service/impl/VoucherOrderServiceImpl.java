@@ -4,34 +4,36 @@ import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIDWorker;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.cache.BloomFilterRegistry;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import com.hmdp.utils.seckill.SeckillSoldOutMarker;
+import com.hmdp.utils.seckill.SeckillStockRouter;
+import com.hmdp.utils.seckill.SeckillVoucherMeta;
+import com.hmdp.utils.seckill.SeckillWindow;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * <p>
@@ -50,116 +52,24 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
     private RedisIDWorker redisIDWorker;
     @Resource
-    private RedissonClient redissonClient;
+    private RedisLockFactory redisLockFactory;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
 
-    /**
-     * 静态代码块初始化判断秒杀资格的Lua脚本
-     */
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    //初始化
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private SeckillSoldOutMarker seckillSoldOutMarker;
+    @Resource
+    private SeckillVoucherMeta seckillVoucherMeta;
 
     //阻塞队列(用于将用户抢购的秒杀券订单存入其中,后续异步创建订单)
     private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
-    //线程池(用于将阻塞队列中的订单信息创建订单)
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-
-    //该方法在该类初始化完成后立即运行(不断从阻塞队列中去获取订单信息,并创建订单)
-    @PostConstruct
-    private void init() {
-        log.info("开始提交阻塞队列中的订单信息任务...");
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
-
-    /**
-     * 线程任务:
-     * v1.0 用于异步处理阻塞队列中的订单
-     * v2.0 用于异步处理Stream消息队列中的订单消息
-     */
-    private class VoucherOrderHandler implements Runnable {
-
-        String queueName = "stream.orders";
-        @Override
-        public void run() {
-            while (true) {
-                //v1.0
-                /**
-                 * try {
-                 *     //1.获取阻塞队列中的订单信息
-                 *     VoucherOrder voucherOrder = orderTasks.take();
-                 *     //2.保存订单
-                 *     handlerVoucherOrder(voucherOrder);
-                 * } catch (Exception e) {
-                 *     log.error("订单处理异常{}",e);
-                 * }
-                 */
-                try {
-                    //1.获取消息队列中的订单信息 xreadgroup group g1 c1 count 1 block 2000 streams stream.orders >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
-                    //2.判断消息是否获取成功
-                    //2.1 若获取失败,则说明没有消息,则继续下一次循环获取
-                    if(list == null || list.isEmpty()) {
-                        continue;
-                    }
-                    //3.解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> recordValue = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(recordValue, new VoucherOrder(), true);
-                    //4.消息获取成功,可以下单
-                    handlerVoucherOrder(voucherOrder);
-                    //5.ACK确认(防止消息被同一消费者组中的消费者重复消费) SACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-                } catch (Exception e) {
-                    //若消息处理异常,则消息会进入pending list
-                    handlerPendingList();
-                }
-
-            }
-        }
-
-        /**
-         * 处理pending list中未处理成功的消息
-         */
-        private void handlerPendingList() {
-            while (true) {
-                try {
-                    //1.获取pending-list中的订单信息 xreadgroup group g1 c1 count 1 streams stream.orders 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-                    //2.判断消息是否获取成功
-                    //2.1 若获取失败,则说明pending-list没有消息,结束循环
-                    if(list == null || list.isEmpty()) {
-                        break;
-                    }
-                    //3.解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> recordValue = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(recordValue, new VoucherOrder(), true);
-                    //4.消息获取成功,可以下单
-                    handlerVoucherOrder(voucherOrder);
-                    //5.ACK确认(防止消息被同一消费者组中的消费者重复消费) SACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-                } catch (Exception e) {
-                    log.error("处理pending-list中订单异常",e);
-                }
-
-            }
-        }
-    }
-
+    //v2.0 Stream消息队列中的订单消息由 SeckillOrderConsumer 按队列租约批量消费
 
     //该类的代理对象,通过主线程赋值(子线程ThreadLocal)
     private IVoucherOrderService proxy;
@@ -179,6 +89,14 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
+        //已售罄的秒杀券直接在本地拒绝,不访问Redis
+        if(seckillSoldOutMarker.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        //布隆过滤器拦截不存在的优惠券id
+        if(!bloomFilters.mightContain(RedisConstants.BLOOM_VOUCHER_KEY, voucherId)) {
+            return Result.fail("优惠券不存在!");
+        }
         // return syncSeckillVoucher(voucherId);
         return asyncSeckillVoucher(voucherId);
     }
@@ -191,21 +109,42 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      * @return
      */
     private Result asyncSeckillVoucher(Long voucherId) {
+        //按本地时间窗口快照预先判断秒杀是否开始/结束(Lua脚本中按Redis服务器时间再次判断)
+        SeckillWindow window = seckillVoucherMeta.get(voucherId);
+        if(window == null) {
+            return Result.fail("优惠券不存在!");
+        }
+        long now = System.currentTimeMillis();
+        if(window.notStarted(now)) {
+            return Result.fail("秒杀还未开始~");
+        }
+        if(window.ended(now)) {
+            return Result.fail("很抱歉,您错过了秒杀时间~");
+        }
         //获取用户ID
         Long userId = UserHolder.getUser().getId();
         //生成订单ID
         Long orderId = redisIDWorker.nextId("order");
-        //1.执行lua脚本,判断是否有秒杀资格(有秒杀资格并将订单信息发送到消息队列中)
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), orderId.toString()
-        );
+        //1.执行lua脚本,判断是否有秒杀资格(有秒杀资格并将订单信息发送到消息队列中),主分片库存不足时向其他分片借库存
+        int r = seckillStockRouter.tryAcquire(voucherId, userId, orderId);
         //2.判断结果是否为0
-        int r = result.intValue();
-        if(r != 0) {
+        if(r != SeckillStockRouter.SUCCESS) {
             //2.1若结果不为0,则没有资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            if(r == SeckillStockRouter.SOLD_OUT) {
+                //所有分片都已售罄,标记并广播给其他节点
+                seckillSoldOutMarker.markSoldOut(voucherId);
+                return Result.fail("库存不足");
+            }
+            switch (r) {
+                case SeckillStockRouter.NOT_STARTED:
+                    return Result.fail("秒杀还未开始~");
+                case SeckillStockRouter.ENDED:
+                    return Result.fail("很抱歉,您错过了秒杀时间~");
+                case SeckillStockRouter.NOT_FOUND:
+                    return Result.fail("优惠券不存在!");
+                default:
+                    return Result.fail("不能重复下单");
+            }
         }
         //3.获取代理对象(用于处理事务)
         proxy = (IVoucherOrderService) AopContext.currentProxy();
@@ -270,8 +209,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
         //基于Redis的分布式锁
         // SimpleRedisLock redisLock = new SimpleRedisLock(stringRedisTemplate, "voucherOrder:" + userId);
-        //基于Redisson的分布式锁(推荐)
-        RLock lock = redissonClient.getLock("voucherOrder:" + userId);
+        //基于Redisson的分布式锁
+        // RLock lock = redissonClient.getLock("voucherOrder:" + userId);
+        //基于Redis的可重入分布式锁(看门狗续期,不依赖Redisson)
+        RedisReentrantLock lock = redisLockFactory.getLock("voucherOrder:" + userId);
         boolean isLock = lock.tryLock();
         if(!isLock) {
             return Result.fail("不允许重复下单!");
@@ -281,7 +222,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
             return proxy.createVoucherOrder(voucherId);
         } finally {
-            lock.unlock();
+            lock.unLock();
         }
     }
 
@@ -332,16 +273,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Transactional
     @Override
     public void asyncCreateVoucherOrder(VoucherOrder voucherOrder) {
-        //一人一单,判断当前用户是否抢购过此秒杀券
-        int count = this.query().eq("user_id", voucherOrder.getUserId())
-                .eq("voucher_id", voucherOrder.getVoucherId())
-                .count();
-        if(count > 0) {
+        //1.创建订单,(user_id, voucher_id)唯一索引保证一人一单,消息重复投递时忽略
+        if(getBaseMapper().insertIfAbsent(voucherOrder) == 0) {
             //该用户已经抢购过此秒杀券
             log.error("用户{}已经抢购过该秒杀券",voucherOrder.getUserId());
             return;
         }
-        //5.扣减库存
+        //2.扣减库存
         //在Java层面上,乐观锁,扣减库存,并用stock > 0作为条件避免超卖
         //在MySQL层面上,是利用事务以及MySQL的行锁来保证线程安全的
         boolean success = seckillVoucherService.update()
@@ -351,10 +289,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .update();
 
         if(!success) {
-            log.error("用户{}手慢无",voucherOrder.getUserId());
+            //库存不足,抛出异常回滚订单
+            throw new IllegalStateException("用户" + voucherOrder.getUserId() + "手慢无,订单已回滚");
         }
+    }
 
-        //6.创建订单
-        this.save(voucherOrder);
+    /**
+     * 异步批量创建订单(一条多行INSERT + 一条UPDATE扣减库存)
+     * 一人一单和库存已由Lua脚本保证,(user_id, voucher_id)唯一索引兜底,消息重复投递时不需要预先查询
+     * @param voucherOrders
+     */
+    @Transactional
+    @Override
+    public void asyncCreateVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //1.一条多行INSERT创建订单
+        List<VoucherOrder> created;
+        try {
+            getBaseMapper().insertBatch(voucherOrders);
+            created = voucherOrders;
+        } catch (DuplicateKeyException e) {
+            //1.1 批次中有重复投递的消息(整条INSERT语句已回滚),逐条插入并忽略重复,只保留真正插入的订单
+            created = new ArrayList<>(voucherOrders.size());
+            for (VoucherOrder voucherOrder : voucherOrders) {
+                if(getBaseMapper().insertIfAbsent(voucherOrder) > 0) {
+                    created.add(voucherOrder);
+                }
+            }
+            log.warn("订单批次中有{}条重复订单已忽略", voucherOrders.size() - created.size());
+        }
+        if(created.isEmpty()) {
+            return;
+        }
+        //2.按优惠券聚合扣减数量,一条UPDATE扣减所有优惠券的库存
+        Map<Long, Integer> decrements = new HashMap<>();
+        for (VoucherOrder voucherOrder : created) {
+            decrements.merge(voucherOrder.getVoucherId(), 1, Integer::sum);
+        }
+        //3.有优惠券库存不足时抛出异常回滚整批订单(之后逐条重试)
+        if(seckillVoucherMapper.decrStockBatch(decrements) < decrements.size()) {
+            throw new IllegalStateException("秒杀券库存不足,订单批次已回滚");
+        }
     }
 }
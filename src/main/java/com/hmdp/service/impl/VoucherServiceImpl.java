@@ -7,15 +7,21 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.cache.BloomFilterRegistry;
+import com.hmdp.utils.seckill.SeckillSoldOutMarker;
+import com.hmdp.utils.seckill.SeckillStockRouter;
+import com.hmdp.utils.seckill.SeckillVoucherMeta;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
-
 /**
  * <p>
  *  服务实现类
@@ -24,6 +30,7 @@ import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
@@ -31,6 +38,14 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private SeckillSoldOutMarker seckillSoldOutMarker;
+    @Resource
+    private SeckillVoucherMeta seckillVoucherMeta;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -40,6 +55,14 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         return Result.ok(vouchers);
     }
 
+    @Override
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 写入布隆过滤器
+        bloomFilters.add(RedisConstants.BLOOM_VOUCHER_KEY, voucher.getId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -53,7 +76,40 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
 
-        //改进:保存秒杀券库存信息到Redis中,用于判断是否还有库存
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(),voucher.getStock().toString());
+        //事务提交后再写入Redis并广播,事务回滚时不会留下数据库中不存在的秒杀券
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    //数据库已提交,写入Redis失败时通过预热接口重新初始化库存和时间窗口
+                    try {
+                        publishSeckillVoucher(voucher, seckillVoucher);
+                    } catch (Exception e) {
+                        log.error("秒杀券{}写入Redis失败,需调用预热接口重新初始化", voucher.getId(), e);
+                    }
+                }
+            });
+            return;
+        }
+        publishSeckillVoucher(voucher, seckillVoucher);
+    }
+
+    private void publishSeckillVoucher(Voucher voucher, SeckillVoucher seckillVoucher) {
+        //改进:保存秒杀券库存信息到Redis中,用于判断是否还有库存(库存拆分到多个分片,避免单个热点key)
+        seckillStockRouter.initStock(voucher.getId(), voucher.getStock());
+        seckillSoldOutMarker.clear(voucher.getId());
+        //秒杀时间窗口写入Redis和本地快照,由Lua脚本校验
+        seckillVoucherMeta.publish(seckillVoucher);
+        // 写入布隆过滤器
+        bloomFilters.add(RedisConstants.BLOOM_VOUCHER_KEY, voucher.getId());
+    }
+
+    @Override
+    public Result preloadSeckillVoucher(Long voucherId) {
+        // 重新发布秒杀时间窗口,并通知所有节点刷新本地快照
+        if(seckillVoucherMeta.preload(voucherId) == null) {
+            return Result.fail("秒杀券不存在!");
+        }
+        return Result.ok();
     }
 }
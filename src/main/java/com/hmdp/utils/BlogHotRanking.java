@@ -0,0 +1,231 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-23:20
+ * @Description: 博客热度排行(代替 ORDER BY liked 分页查询)
+ * 1.热度 = Σ 2^((点赞时间 - 基准时间) / 半衰期),每经过一个半衰期,之前所有点赞的热度相对减半
+ * 2.点赞/取消点赞时由 hotIncr.lua 增量更新,无需重新计算
+ *   排行榜、基准时间、临时排行榜使用相同的hash tag {blog:hot},集群模式下多key脚本和ZUNIONSTORE不会跨slot
+ * 3.权重随时间指数增长,定期平移基准时间,将所有热度同比例缩小(排名不变)
+ * 4.排行榜不存在时(冷启动)由获取到锁的节点从数据库全量计算
+ */
+@Slf4j
+@Component
+public class BlogHotRanking implements ApplicationRunner {
+
+    private static final int SCAN_BATCH_SIZE = 1000;
+    //基准时间距今超过该数量的半衰期时平移基准时间
+    private static final int REBASE_HALF_LIVES = 32;
+    //全量计算时,早于该数量半衰期的博客按该时间计算,防止权重下溢为0导致无法按点赞数排序
+    private static final int REBUILD_MAX_HALF_LIVES = 30;
+
+    private static final DefaultRedisScript<Long> REBASE_SCRIPT;
+    static {
+        REBASE_SCRIPT = new DefaultRedisScript<>();
+        REBASE_SCRIPT.setLocation(new ClassPathResource("hotRebase.lua"));
+        REBASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> INCR_SCRIPT;
+    static {
+        INCR_SCRIPT = new DefaultRedisScript<>();
+        INCR_SCRIPT.setLocation(new ClassPathResource("hotIncr.lua"));
+        INCR_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BlogMapper blogMapper;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+
+    @Value("${hmdp.blog.hot.half-life-hours:24}")
+    private long halfLifeHours;
+
+    /**
+     * 热度半衰期(毫秒)
+     */
+    public long halfLifeMillis() {
+        return TimeUnit.HOURS.toMillis(halfLifeHours);
+    }
+
+    /**
+     * 启动完成后在后台线程中检查排行榜是否需要初始化
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread loader = new Thread(this::rebuildIfAbsent, "blog-hot-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 分页查询热度排行
+     * @param current 页码
+     * @param pageSize 每页数量
+     * @return 博客id(按热度从高到低);排行榜尚未初始化或正在初始化时返回null
+     */
+    public List<Long> page(int current, int pageSize) {
+        List<Object> state = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.exists(RedisConstants.BLOG_HOT_EPOCH_KEY.getBytes(StandardCharsets.UTF_8));
+            connection.exists(redisLockFactory.getLock(RedisConstants.BLOG_HOT_LOCK).getKey().getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        if(!BooleanUtil.isTrue((Boolean) state.get(0)) || BooleanUtil.isTrue((Boolean) state.get(1))) {
+            return null;
+        }
+        long start = (long) (current - 1) * pageSize;
+        Set<String> ids = stringRedisTemplate.opsForZSet().reverseRange(RedisConstants.BLOG_HOT_KEY, start, start + pageSize - 1);
+        if(ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 新发布的博客加入排行榜,初始热度相当于发布时的一次点赞
+     * @param blogId 博客id
+     */
+    public void onCreated(Long blogId) {
+        incr(blogId, System.currentTimeMillis(), 1);
+    }
+
+    /**
+     * 点赞/取消点赞后更新热度
+     * @param blogId 博客id
+     * @param likedAt 点赞时间(取消点赞时为当初的点赞时间)
+     * @param liked true为点赞,false为取消点赞
+     */
+    public void onLiked(Long blogId, long likedAt, boolean liked) {
+        incr(blogId, likedAt, liked ? 1 : -1);
+    }
+
+    private void incr(Long blogId, long time, int sign) {
+        stringRedisTemplate.execute(
+                INCR_SCRIPT,
+                Arrays.asList(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_EPOCH_KEY),
+                blogId.toString(), String.valueOf(time), String.valueOf(sign), String.valueOf(halfLifeMillis())
+        );
+    }
+
+    /**
+     * 定期检查是否需要平移基准时间
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void rebase() {
+        String epoch = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_EPOCH_KEY);
+        long now = System.currentTimeMillis();
+        if(epoch == null || now - Long.parseLong(epoch) < REBASE_HALF_LIVES * halfLifeMillis()) {
+            return;
+        }
+        stringRedisTemplate.execute(
+                REBASE_SCRIPT,
+                Arrays.asList(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_EPOCH_KEY),
+                String.valueOf(now), String.valueOf(halfLifeMillis()), String.valueOf(RedisConstants.BLOG_HOT_MAX_SIZE)
+        );
+        log.info("博客热度基准时间已平移");
+    }
+
+    /**
+     * 排行榜不存在时从数据库全量计算(点赞时间未知,全部按博客发布时间计算)
+     */
+    public void rebuildIfAbsent() {
+        //全量计算耗时与博客数量有关,由看门狗续期,只有持有者才能释放
+        RedisReentrantLock lock = redisLockFactory.getLock(RedisConstants.BLOG_HOT_LOCK);
+        try {
+            while (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.BLOG_HOT_EPOCH_KEY))) {
+                if(lock.tryLock()) {
+                    try {
+                        //DoubleCheck,获取锁之前其他节点可能已计算完成
+                        if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.BLOG_HOT_EPOCH_KEY))) {
+                            rebuild();
+                        }
+                    } catch (RuntimeException e) {
+                        //计算失败,删除基准时间,下次启动时重新计算
+                        stringRedisTemplate.delete(RedisConstants.BLOG_HOT_EPOCH_KEY);
+                        throw e;
+                    } finally {
+                        lock.unLock();
+                    }
+                    return;
+                }
+                //其他节点正在计算,等待其完成
+                Thread.sleep(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("博客热度排行初始化失败,暂时按点赞数查询数据库", e);
+        }
+    }
+
+    private void rebuild() {
+        long epoch = System.currentTimeMillis();
+        long oldest = epoch - REBUILD_MAX_HALF_LIVES * halfLifeMillis();
+        //1.先写入基准时间,计算期间的点赞由hotIncr.lua直接累加到排行榜,最后与全量结果求和
+        stringRedisTemplate.delete(Arrays.asList(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_TMP_KEY));
+        stringRedisTemplate.opsForValue().set(RedisConstants.BLOG_HOT_EPOCH_KEY, String.valueOf(epoch));
+        //2.按id分批扫描,热度 = (点赞数 + 1) * 发布时间的权重
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                    .select("id", "liked", "create_time").gt("id", lastId).orderByAsc("id").last("limit " + SCAN_BATCH_SIZE));
+            if(blogs.isEmpty()) {
+                break;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(blogs.size() * 2);
+            for (Blog blog : blogs) {
+                long createTime = blog.getCreateTime() == null ? epoch
+                        : blog.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                double score = (liked + 1) * weight(Math.max(createTime, oldest), epoch);
+                tuples.add(new DefaultTypedTuple<>(blog.getId().toString(), score));
+            }
+            stringRedisTemplate.opsForZSet().add(RedisConstants.BLOG_HOT_TMP_KEY, tuples);
+            count += blogs.size();
+            lastId = blogs.get(blogs.size() - 1).getId();
+        }
+        //3.与计算期间的增量求和
+        stringRedisTemplate.opsForZSet().unionAndStore(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_TMP_KEY, RedisConstants.BLOG_HOT_KEY);
+        stringRedisTemplate.delete(RedisConstants.BLOG_HOT_TMP_KEY);
+        stringRedisTemplate.opsForZSet().removeRange(RedisConstants.BLOG_HOT_KEY, 0, -RedisConstants.BLOG_HOT_MAX_SIZE - 1);
+        log.info("博客热度排行初始化完成,共{}个博客", count);
+    }
+
+    private double weight(long time, long epoch) {
+        return Math.pow(2, (double) (time - epoch) / halfLifeMillis());
+    }
+}
@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-22:50
+ * @Description: 点赞数异步写回
+ * 点赞/取消点赞只在Redis中记录增量(BlogServiceImpl.likeBlog),由本任务定期找出点赞数变化的博客,批量写回 tb_blog.liked,
+ * 热门博客的点赞不再竞争同一行的行锁
+ * 1.写回前将增量hash重命名为处理中的hash,之后的点赞写入新的增量hash,互不影响
+ * 2.写回的是点赞集合 blog:liked:{id} 的大小(绝对值)而不是增量,重复写回结果相同:
+ *   每一批UPDATE提交后才从处理中的hash删除对应的博客,节点宕机后下一次执行重放遗留的处理中的hash,不会重复累加
+ * 3.同一时刻只有一个节点执行写回(带看门狗续期、释放时校验持有者的分布式锁,写回耗时较长时锁也不会过期)
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BlogMapper blogMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+
+    private static final String FLUSH_LOCK = "blog:like:flush";
+
+    /**
+     * 定期写回点赞数,间隔由 hmdp.blog.like.flush-interval 配置(毫秒)
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.like.flush-interval:1000}")
+    public void flush() {
+        //1.获取锁,其他节点正在写回则跳过本次
+        RedisReentrantLock lock = redisLockFactory.getLock(FLUSH_LOCK);
+        if(!lock.tryLock()) {
+            return;
+        }
+        try {
+            //2.没有遗留的处理中的增量,则将当前增量转为处理中
+            if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.BLOG_LIKE_PROCESSING_KEY))) {
+                if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.BLOG_LIKE_DELTA_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.renameIfAbsent(RedisConstants.BLOG_LIKE_DELTA_KEY, RedisConstants.BLOG_LIKE_PROCESSING_KEY);
+            }
+            //3.分批写回数据库
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(RedisConstants.BLOG_LIKE_PROCESSING_KEY);
+            List<Map.Entry<Object, Object>> list = new ArrayList<>(entries.entrySet());
+            long flushed = 0;
+            for (int from = 0; from < list.size(); from += RedisConstants.BLOG_LIKE_FLUSH_BATCH) {
+                List<Map.Entry<Object, Object>> batch = list.subList(from, Math.min(from + RedisConstants.BLOG_LIKE_FLUSH_BATCH, list.size()));
+                flushed += flushBatch(batch);
+            }
+            stringRedisTemplate.delete(RedisConstants.BLOG_LIKE_PROCESSING_KEY);
+            if(flushed > 0) {
+                log.debug("点赞数写回完成,共{}个博客", flushed);
+            }
+        } catch (Exception e) {
+            //处理中的增量保留在Redis中,下一次执行时重放
+            log.error("点赞数写回失败", e);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private int flushBatch(List<Map.Entry<Object, Object>> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        Object[] fields = new Object[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            Map.Entry<Object, Object> entry = batch.get(i);
+            fields[i] = entry.getKey();
+            //点赞后又取消,增量为0,点赞数没有变化
+            if(Long.parseLong(entry.getValue().toString()) != 0) {
+                ids.add(Long.valueOf(entry.getKey().toString()));
+            }
+        }
+        Map<Long, Long> counts = new HashMap<>(ids.size() * 2);
+        if(!ids.isEmpty()) {
+            //1.一次pipeline查询这一批博客的点赞数(点赞集合的大小)
+            List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long id : ids) {
+                    connection.zCard((RedisConstants.BLOG_LIKED_KEY + id).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            for (int i = 0; i < ids.size(); i++) {
+                counts.put(ids.get(i), sizes.get(i) == null ? 0L : ((Number) sizes.get(i)).longValue());
+            }
+            //2.一条UPDATE语句写回这一批博客的点赞数
+            blogMapper.updateLikedBatch(counts);
+        }
+        //3.提交后再从处理中的hash删除
+        stringRedisTemplate.opsForHash().delete(RedisConstants.BLOG_LIKE_PROCESSING_KEY, fields);
+        //4.点赞数已变化,删除博客缓存
+        counts.keySet().forEach(id -> cacheClient.delete(RedisConstants.CACHE_BLOG_KEY + id));
+        return counts.size();
+    }
+}
@@ -1,21 +1,50 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.RedisData;
-import com.hmdp.entity.Shop;
+import com.hmdp.utils.cache.BloomFilter;
+import com.hmdp.utils.cache.BloomFilterRegistry;
+import com.hmdp.utils.cache.CacheRebuildNotifier;
+import com.hmdp.utils.cache.CacheRebuildScheduler;
+import com.hmdp.utils.cache.HotKeyDetector;
+import com.hmdp.utils.cache.NearCache;
+import com.hmdp.utils.cache.SingleFlight;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheCodecRegistry;
+import com.hmdp.utils.codec.CacheEnvelope;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
-import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @Author: xuyuchao
@@ -27,35 +56,181 @@ import java.util.function.LongFunction;
 public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
+    private final NearCache nearCache;
+    private final CacheRebuildNotifier rebuildNotifier;
+    private final CacheCodecRegistry codecRegistry;
+    private final CacheRebuildScheduler rebuildScheduler;
+    private final BloomFilterRegistry bloomFilters;
+    private final HotKeyDetector hotKeyDetector;
+    //进程内请求合并,同一key同时只有一个线程加载
+    private final SingleFlight singleFlight = new SingleFlight();
+    //锁标识前缀,区分不同节点
+    private static final String LOCK_ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+    //释放锁Lua脚本(判断锁标识后删除)
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unLock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public CacheClient(StringRedisTemplate stringRedisTemplate, NearCache nearCache, CacheRebuildNotifier rebuildNotifier,
+                       CacheCodecRegistry codecRegistry, CacheRebuildScheduler rebuildScheduler,
+                       BloomFilterRegistry bloomFilters, HotKeyDetector hotKeyDetector) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.nearCache = nearCache;
+        this.rebuildNotifier = rebuildNotifier;
+        this.codecRegistry = codecRegistry;
+        this.rebuildScheduler = rebuildScheduler;
+        this.bloomFilters = bloomFilters;
+        this.hotKeyDetector = hotKeyDetector;
     }
 
     /**
-     * 将任意对象转为json格式存入Redis,并设置TTL
+     * 将任意对象序列化后存入Redis,并设置TTL
+     * 注册了编解码器的类型使用二进制格式,其余类型仍使用json格式
      * @param key
      * @param value
      * @param time
      * @param timeUnit
      */
     public void set(String key, Object value, Long time, TimeUnit timeUnit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value),time,timeUnit);
+        byte[] data = serialize(value, 0L);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey(key), data, Expiration.from(time, timeUnit), RedisStringCommands.SetOption.UPSERT));
     }
 
     /**
-     * 将任意对象转为json格式,并设置逻辑过期时间
+     * 将任意对象序列化,并设置逻辑过期时间
+     * 二进制格式的逻辑过期时间位于固定头部;json格式仍使用RedisData包装
      * @param key
      * @param value
      * @param time
      * @param timeUnit
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit timeUnit) {
+        long expireAt = System.currentTimeMillis() + timeUnit.toMillis(time);
+        byte[] data = serialize(value, expireAt);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey(key), data));
+    }
+
+    /**
+     * 将任意对象序列化,并设置逻辑过期时间(软过期)以及Redis中key的TTL(硬过期),两者都加入随机抖动
+     * @param key
+     * @param value
+     * @param softTime 逻辑过期时间,过期后仍返回旧数据并异步重建
+     * @param hardTime key的TTL,过期后key被删除,需要同步加载
+     * @param timeUnit
+     */
+    public void setWithLogicalExpire(String key, Object value, Long softTime, Long hardTime, TimeUnit timeUnit) {
+        long softMillis = jitter(timeUnit.toMillis(softTime));
+        long hardMillis = Math.max(jitter(timeUnit.toMillis(hardTime)), softMillis);
+        byte[] data = serialize(value, System.currentTimeMillis() + softMillis);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey(key), data, Expiration.milliseconds(hardMillis), RedisStringCommands.SetOption.UPSERT));
+    }
+
+    /**
+     * 将对象列表序列化后存入Redis的List中(一次RPUSH),并设置TTL
+     * @param key
+     * @param values
+     * @param time
+     * @param timeUnit
+     */
+    public void setList(String key, List<?> values, Long time, TimeUnit timeUnit) {
+        byte[][] data = values.stream().map(this::serialize).toArray(byte[][]::new);
+        byte[] rawKey = rawKey(key);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.rPush(rawKey, data);
+            connection.pExpire(rawKey, timeUnit.toMillis(time));
+            return null;
+        });
+    }
+
+    /**
+     * 读取Redis的List中的全部对象
+     * @param key
+     * @param type
+     * @return 对象列表,缓存不存在时返回空列表
+     */
+    public <R> List<R> getList(String key, Class<R> type) {
+        List<byte[]> data = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.lRange(rawKey(key), 0, -1));
+        if(data == null || data.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return data.stream().map(item -> deserialize(item, type)).collect(Collectors.toList());
+    }
+
+    /**
+     * 序列化对象(不设置逻辑过期时间)
+     * @param value
+     * @return
+     */
+    public byte[] serialize(Object value) {
+        return serialize(value, 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object value, long expireAt) {
+        CacheCodec<Object> codec = (CacheCodec<Object>) codecRegistry.get(value.getClass());
+        if(codec != null) {
+            return CacheEnvelope.encode(codec, value, expireAt);
+        }
+        if(expireAt == 0L) {
+            return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+        }
         RedisData redisData = new RedisData();
         redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
-        //将redisData转为json存入Redis
-        stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(redisData));
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 反序列化对象(兼容二进制格式和旧的json格式)
+     * @param data
+     * @param type
+     * @return
+     */
+    public <R> R deserialize(byte[] data, Class<R> type) {
+        if(CacheEnvelope.isBinary(data)) {
+            CacheCodec<R> codec = codecRegistry.get(type);
+            if(codec == null) {
+                throw new IllegalStateException("未注册的缓存编解码器:" + type.getName());
+            }
+            return CacheEnvelope.decode(codec, data);
+        }
+        return JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), type);
+    }
+
+    /**
+     * 读取逻辑过期时间:二进制格式只读取头部,无需反序列化对象数据
+     */
+    private long logicalExpireAt(byte[] data) {
+        if(CacheEnvelope.isBinary(data)) {
+            return CacheEnvelope.readExpireAt(data);
+        }
+        RedisData redisData = JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), RedisData.class);
+        return redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 反序列化带逻辑过期时间的对象
+     */
+    private <R> R deserializeLogical(byte[] data, Class<R> type) {
+        if(CacheEnvelope.isBinary(data)) {
+            return deserialize(data, type);
+        }
+        RedisData redisData = JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), type);
+    }
+
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -72,44 +247,254 @@ public class CacheClient {
      * @return
      */
     public <R,ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID,R> dbFallBack,Long time,TimeUnit timeUnit) {
-        String key = keyPrefix + id;
-        //查询Redis
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //若缓存命中,且不为空值,返回反序列化的对象
-        if(StrUtil.isNotBlank(json)) {
-            return JSONUtil.toBean(json,type);
-        }
-        //若缓存命中的是空字符串,直接返回错误信息(说明命中了解决缓存穿透的无效key)
-        if("".equals(json)) {
+        //0.布隆过滤器判断id一定不存在,直接返回,不访问Redis和数据库
+        if(!mightExist(keyPrefix, id)) {
             return null;
         }
+        String key = keyPrefix + id;
+        //1.依次查询本地缓存(L1)和Redis,命中则直接返回(命中空值说明命中了解决缓存穿透的无效key)
+        Object cached = readCache(key, type);
+        if(cached != null) {
+            return unwrap(cached, type);
+        }
+        //2.缓存未命中,同一进程内同一key的并发请求合并为一次加载,所有调用者共享同一个结果
+        return singleFlight.execute(key, () -> loadWithMutex(key, RedisConstants.LOCK_CACHE_KEY + key, type,
+                () -> readRedis(key, type),
+                () -> loadFromDb(key, id, dbFallBack, time, timeUnit)));
+    }
+
+    /**
+     * 该key前缀注册了布隆过滤器且id为数字时,判断id是否可能存在;其余情况一律放行
+     */
+    private <ID> boolean mightExist(String keyPrefix, ID id) {
+        BloomFilter filter = bloomFilters.forCachePrefix(keyPrefix);
+        if(filter == null || !(id instanceof Number)) {
+            return true;
+        }
+        return filter.mightContain(((Number) id).longValue());
+    }
+
+    /**
+     * 缓存未命中时的加载(跨节点互斥)
+     * 获取重建锁的节点查询数据库并写入Redis,其他节点阻塞等待重建完成的通知后重新读取Redis,不再休眠轮询
+     * 等待时间最长为锁的过期时间:持有锁的节点宕机时锁自动过期,之后由某个等待的节点获取锁重建,数据库加载较慢时也不会有多个节点同时查询
+     * @param lockKey 重建锁的key(与同一key的异步重建使用同一把锁)
+     * @param cacheReader 读取Redis:命中空值返回 NearCache.NULL_VALUE;未命中返回null
+     * @param dbLoader 查询数据库并写入Redis
+     */
+    private <R> R loadWithMutex(String key, String lockKey, Class<R> type, Supplier<Object> cacheReader, Supplier<R> dbLoader) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(RedisConstants.LOCK_CACHE_TTL)
+                + RedisConstants.CACHE_REBUILD_WAIT;
+        while (true) {
+            String token = tryLock(lockKey);
+            if(token != null) {
+                try {
+                    //DoubleCheck,获取锁之前可能已有其他节点完成了重建
+                    Object cached = cacheReader.get();
+                    if(cached != null) {
+                        return unwrap(cached, type);
+                    }
+                    return dbLoader.get();
+                } finally {
+                    unLock(lockKey, token);
+                    rebuildNotifier.notifyRebuilt(key);
+                }
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0) {
+                break;
+            }
+            //其他节点正在重建:先注册通知再检查一次Redis,防止通知在注册之前就已发出
+            CompletableFuture<Void> signal = rebuildNotifier.await(key);
+            Object cached = cacheReader.get();
+            if(cached == null) {
+                try {
+                    //每轮最多等待 CACHE_REBUILD_WAIT,之后重新尝试获取锁(持有锁的节点宕机、锁过期时接手重建)
+                    signal.get(Math.min(RedisConstants.CACHE_REBUILD_WAIT, remaining), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException | TimeoutException e) {
+                    rebuildNotifier.cancel(key, signal);
+                }
+                cached = cacheReader.get();
+            } else {
+                rebuildNotifier.cancel(key, signal);
+            }
+            if(cached != null) {
+                return unwrap(cached, type);
+            }
+        }
+        //等待超过锁的过期时间仍未重建完成,也未能获取锁,直接查询数据库兜底
+        log.warn("等待缓存重建超时,直接查询数据库:{}", key);
+        return dbLoader.get();
+    }
 
-        //若缓存未命中
+    /**
+     * 查询数据库并写入缓存
+     */
+    private <R,ID> R loadFromDb(String key, ID id, Function<ID,R> dbFallBack, Long time, TimeUnit timeUnit) {
         //1.根据id查询数据库
         R r = dbFallBack.apply(id);
         //2.若数据库中不存在
         if(r == null) {
             //将空值写入Redis,防止后续同样无效请求缓存击穿
             stringRedisTemplate.opsForValue().set(key,"",RedisConstants.CACHE_NULL_TTL,TimeUnit.MINUTES);
+            nearCache.put(key, null);
             //返回错误信息
             return null;
         }
-        //3.若数据库中存在,则将数据写入Redis
-        this.set(key,r,time, timeUnit);
+        //3.若数据库中存在,则将数据写入Redis(过期时间加入随机抖动,避免同一批写入的key同时过期)
+        this.set(key,r,jitter(timeUnit.toMillis(time)), TimeUnit.MILLISECONDS);
+        nearCache.put(key, r);
         //返回数据库中的数据
         return r;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 依次查询本地缓存和Redis
+     * @return 缓存对象;命中空值返回 NearCache.NULL_VALUE;未命中返回null
+     */
+    private <R> Object readCache(String key, Class<R> type) {
+        Object local = nearCache.get(key);
+        if(local != null) {
+            return local;
+        }
+        return readRedis(key, type);
+    }
 
     /**
-     * 缓存击穿解决
+     * 查询Redis,命中后回填本地缓存
+     * @return 缓存对象;命中空值返回 NearCache.NULL_VALUE;未命中返回null
+     */
+    private <R> Object readRedis(String key, Class<R> type) {
+        byte[] data = getRaw(key);
+        if(data == null) {
+            return null;
+        }
+        Object value;
+        if(data.length == 0) {
+            value = NearCache.NULL_VALUE;
+        } else {
+            try {
+                value = deserialize(data, type);
+            } catch (IllegalStateException e) {
+                //无法解析(例如结构版本不兼容),按未命中处理,由加载流程覆盖写入
+                log.warn("缓存数据无法解析,按未命中处理:{}", key, e);
+                return null;
+            }
+        }
+        nearCache.put(key, value);
+        //热点key提升到进程内短期缓存,后续请求不再访问Redis
+        if(hotKeyDetector.record(key)) {
+            nearCache.promote(key, value);
+        }
+        return value;
+    }
+
+    private <R> R unwrap(Object cached, Class<R> type) {
+        return cached == NearCache.NULL_VALUE ? null : type.cast(cached);
+    }
+
+    /**
+     * 批量查询(解决缓存穿透),无论查询多少个id,访问Redis和数据库的次数都是常数
+     * 1.布隆过滤器过滤不存在的id,再查询本地缓存
+     * 2.本地缓存未命中的id使用一次MGET查询Redis
+     * 3.Redis未命中的id一次性查询数据库,并通过pipeline回填Redis(数据库中不存在的id写入空值)
+     * @param keyPrefix key前缀
+     * @param ids 查询对象的id集合
+     * @param type 查询对象的类型class
+     * @param dbBatchFallBack 根据id集合批量查询数据的具体函数,返回 id -> 数据
+     * @param time ttl
+     * @param timeUnit ttl的单位
+     * @param <R> 查询对象的类型
+     * @param <ID> 查询对象id的类型
+     * @return id -> 数据,不存在的id不包含在结果中
+     */
+    public <R,ID> Map<ID,R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                       Function<Collection<ID>,Map<ID,R>> dbBatchFallBack, Long time, TimeUnit timeUnit) {
+        Map<ID,R> result = new HashMap<>(ids.size() * 2);
+        //1.去重,过滤一定不存在的id,查询本地缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if(!mightExist(keyPrefix, id)) {
+                continue;
+            }
+            Object local = nearCache.get(keyPrefix + id);
+            if(local == null) {
+                remoteIds.add(id);
+            } else if(local != NearCache.NULL_VALUE) {
+                result.put(id, type.cast(local));
+            }
+        }
+        if(remoteIds.isEmpty()) {
+            return result;
+        }
+        //2.一次MGET查询Redis
+        byte[][] keys = remoteIds.stream().map(id -> rawKey(keyPrefix + id)).toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            String key = keyPrefix + id;
+            byte[] data = values == null ? null : values.get(i);
+            if(data == null) {
+                missIds.add(id);
+                continue;
+            }
+            //命中空值,说明数据库中不存在
+            if(data.length == 0) {
+                nearCache.put(key, null);
+                continue;
+            }
+            R r;
+            try {
+                r = deserialize(data, type);
+            } catch (IllegalStateException e) {
+                log.warn("缓存数据无法解析,按未命中处理:{}", key, e);
+                missIds.add(id);
+                continue;
+            }
+            nearCache.put(key, r);
+            if(hotKeyDetector.record(key)) {
+                nearCache.promote(key, r);
+            }
+            result.put(id, r);
+        }
+        if(missIds.isEmpty()) {
+            return result;
+        }
+        //3.一次查询数据库
+        Map<ID,R> loaded = dbBatchFallBack.apply(missIds);
+        //4.pipeline回填Redis和本地缓存
+        Expiration nullTtl = Expiration.from(RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                String key = keyPrefix + id;
+                R r = loaded.get(id);
+                if(r == null) {
+                    connection.set(rawKey(key), new byte[0], nullTtl, RedisStringCommands.SetOption.UPSERT);
+                    nearCache.put(key, null);
+                    continue;
+                }
+                connection.set(rawKey(key), serialize(r, 0L),
+                        Expiration.milliseconds(jitter(timeUnit.toMillis(time))), RedisStringCommands.SetOption.UPSERT);
+                nearCache.put(key, r);
+                result.put(id, r);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * 缓存击穿解决(逻辑过期,硬过期时间默认为软过期时间的 CACHE_HARD_TTL_FACTOR 倍)
      * 缓存击穿问题也叫热点Key问题，就是一个被高并发访问并且缓存重建业务较复杂的key突然失效了，无数的请求访问会在瞬间给数据库带来巨大的冲击。
      * @param keyPrefix key前缀
      * @param lockPrefix 互斥锁前缀
      * @param id 查询对象的id
      * @param type 查询对象的类型class
-     * @param time 缓存重建key的过期时间
+     * @param time 缓存重建key的过期时间(软过期时间)
      * @param timeUnit 缓存重建key的过期时间单位
      * @param dbFallBack 根据id查询数据的具体函数
      * @param <R> 查询对象的类型
@@ -117,97 +502,183 @@ public class CacheClient {
      * @return
      */
     public <R,ID> R cacheBreak(String keyPrefix, String lockPrefix, ID id, Class<R> type, Long time, TimeUnit timeUnit,Function<ID,R> dbFallBack) {
+        return cacheBreak(keyPrefix, lockPrefix, id, type, time, time * RedisConstants.CACHE_HARD_TTL_FACTOR, timeUnit, dbFallBack);
+    }
+
+    /**
+     * 缓存击穿解决(软/硬过期时间)
+     * 1.软过期之前:直接返回缓存数据
+     * 2.软过期之后、硬过期之前:返回旧数据,同时提交异步重建任务(同一key只会有一个重建任务)
+     * 3.硬过期之后(Redis中的key已被删除)或从未预热:同步加载,进程内合并并发请求,跨节点互斥
+     * 软/硬过期时间都会加入随机抖动,避免同一批预热的key同时过期
+     * @param keyPrefix key前缀
+     * @param lockPrefix 互斥锁前缀
+     * @param id 查询对象的id
+     * @param type 查询对象的类型class
+     * @param softTime 软过期时间(逻辑过期时间)
+     * @param hardTime 硬过期时间(Redis中key的TTL)
+     * @param timeUnit 时间单位
+     * @param dbFallBack 根据id查询数据的具体函数
+     * @param <R> 查询对象的类型
+     * @param <ID> 查询对象id的类型
+     * @return
+     */
+    public <R,ID> R cacheBreak(String keyPrefix, String lockPrefix, ID id, Class<R> type, Long softTime, Long hardTime, TimeUnit timeUnit, Function<ID,R> dbFallBack) {
+        //0.布隆过滤器判断id一定不存在,直接返回,不访问Redis和数据库
+        if(!mightExist(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
-        //1.查询Redis
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //2.若缓存未命中,则直接返回空信息(说明该热点数据未提前预热,避免大量请求打到数据库)
-        if(StrUtil.isBlank(json)) {
+        //1.查询本地缓存(热点key已被提升到本地),未命中再查询Redis
+        Object local = nearCache.get(key);
+        if(local != null) {
+            return unwrap(local, type);
+        }
+        //与软过期后的异步重建使用同一把锁,两条路径不会同时查询数据库
+        Supplier<R> syncLoad = () -> singleFlight.execute(key, () -> loadWithMutex(key, lockPrefix + id, type,
+                () -> readLogical(key, type),
+                () -> rebuildLogical(key, id, dbFallBack, softTime, hardTime, timeUnit)));
+        byte[] data = getRaw(key);
+        //2.若缓存未命中(未预热或已硬过期),则同步加载
+        if(data == null) {
+            return syncLoad.get();
+        }
+        //命中空值,说明数据库中不存在
+        if(data.length == 0) {
             return null;
         }
-        //3.若缓存命中,则将json反序列化为对应对象(得到对应对象数据和逻辑过期时间)
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        //3.若缓存命中,则反序列化为对应对象(二进制格式的逻辑过期时间位于头部)
+        R r;
+        try {
+            r = deserializeLogical(data, type);
+        } catch (IllegalStateException e) {
+            //无法解析(例如结构版本不兼容),按未命中处理,同步加载并覆盖写入
+            log.warn("缓存数据无法解析,按未命中处理:{}", key, e);
+            return syncLoad.get();
+        }
+        if(hotKeyDetector.record(key)) {
+            nearCache.promote(key, r);
+        }
         //4.判断缓存数据是否过期
         //4.1若缓存时间未过期,则直接返回缓存数据
-        if(expireTime.isAfter(LocalDateTime.now())) {
+        if(logicalExpireAt(data) > System.currentTimeMillis()) {
             return r;
         }
-        //4.2若缓存时间过期,则开启新的线程进行缓存重建
-        //5.获取互斥锁
-        String lockKey = lockPrefix + id;
-        boolean isLock = tryLock(lockKey);
-        if(isLock) {
-            //5.1 获取锁成功,开启新的线程进行缓存重建
-            //双重检查,DoubleCheck,再次判断当前缓存数据是否过期,因为你成功获取互斥锁有一种可能是有一个线程刚释放完互斥锁，
-            //也就证明此时缓存中的数据是新鲜热乎的，此时不需要再去重建缓存，刚刚有线程才重建完(说白了,就是有其他线程也进入了缓存逻辑时间过期代码)
-            redisData = JSONUtil.toBean(json, RedisData.class);
-            r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-            expireTime = redisData.getExpireTime();
-            if(expireTime.isAfter(LocalDateTime.now())) {
-                return r;
-            }
-
-            //提交缓存重建任务给线程池
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //根据id查询数据库
-                    R rebuildR = dbFallBack.apply(id);
-                    this.setWithLogicalExpire(key,rebuildR,time,timeUnit);
-                }catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    unLock(lockKey);
+        //4.2若缓存时间已软过期,则提交异步重建任务(由调度器对同一key去重)
+        rebuildScheduler.submit(key, () -> {
+            //5.获取互斥锁(跨节点去重),获取失败说明有其他节点正在重建
+            String lockKey = lockPrefix + id;
+            String token = tryLock(lockKey);
+            if(token == null) {
+                return;
+            }
+            try {
+                //双重检查,DoubleCheck,重新读取Redis判断当前缓存数据是否过期,因为你成功获取互斥锁有一种可能是有一个线程刚释放完互斥锁，
+                //也就证明此时缓存中的数据是新鲜热乎的，此时不需要再去重建缓存(二进制格式只需读取头部,无需反序列化)
+                byte[] latest = getRaw(key);
+                if(latest != null && latest.length > 0 && logicalExpireAt(latest) > System.currentTimeMillis()) {
+                    return;
                 }
-            });
-        }
-        //5.2 获取锁失败,说明有其他线程获取到了锁正在缓存重建
-
+                rebuildLogical(key, id, dbFallBack, softTime, hardTime, timeUnit);
+            } finally {
+                unLock(lockKey, token);
+            }
+        });
         //6 本次直接返回旧数据
         return r;
     }
 
     /**
-     * 利用setnx尝试获取互斥锁
-     * @param key
-     * @return
+     * 查询数据库并以逻辑过期的格式写入Redis
      */
-    public boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    private <R,ID> R rebuildLogical(String key, ID id, Function<ID,R> dbFallBack, Long softTime, Long hardTime, TimeUnit timeUnit) {
+        R r = dbFallBack.apply(id);
+        if(r == null) {
+            stringRedisTemplate.opsForValue().set(key,"",RedisConstants.CACHE_NULL_TTL,TimeUnit.MINUTES);
+            return null;
+        }
+        setWithLogicalExpire(key, r, softTime, hardTime, timeUnit);
+        return r;
     }
 
     /**
-     * 释放锁
-     * @param key
+     * 读取逻辑过期格式的缓存(不判断是否过期)
+     * @return 缓存对象;命中空值返回 NearCache.NULL_VALUE;未命中返回null
      */
-    public void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    private <R> Object readLogical(String key, Class<R> type) {
+        byte[] data = getRaw(key);
+        if(data == null) {
+            return null;
+        }
+        if(data.length == 0) {
+            return NearCache.NULL_VALUE;
+        }
+        try {
+            return deserializeLogical(data, type);
+        } catch (IllegalStateException e) {
+            //无法解析,按未命中处理,由加载流程覆盖写入
+            log.warn("缓存数据无法解析,按未命中处理:{}", key, e);
+            return null;
+        }
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * 为过期时间加入随机抖动(±CACHE_TTL_JITTER_PERCENT%)
+     * @param millis 过期时间
+     * @return 抖动后的过期时间
+     */
+    private long jitter(long millis) {
+        long range = millis * RedisConstants.CACHE_TTL_JITTER_PERCENT / 100;
+        if(range <= 0) {
+            return millis;
+        }
+        return millis + ThreadLocalRandom.current().nextLong(-range, range + 1);
+    }
 
+    /**
+     * 删除缓存:删除Redis中的缓存,并广播使所有节点的本地缓存失效
+     * @param key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        nearCache.invalidate(key);
+    }
 
+    /**
+     * 事务提交后删除缓存(没有事务时立即删除)
+     * 在事务中删除时,并发的读请求可能在提交前把旧数据重新写入Redis和各节点的本地缓存,直到过期前一直返回旧数据
+     * @param key
+     */
+    public void deleteAfterCommit(String key) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            delete(key);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                delete(key);
+            }
+        });
+    }
 
+    /**
+     * 利用setnx尝试获取互斥锁,锁的值为本次获取的唯一标识
+     * @param key
+     * @return 获取成功返回锁标识(释放锁时使用),失败返回null
+     */
+    public String tryLock(String key) {
+        String token = LOCK_ID_PREFIX + UUID.randomUUID().toString(true);
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, token, RedisConstants.LOCK_CACHE_TTL, TimeUnit.SECONDS);
+        return BooleanUtil.isTrue(flag) ? token : null;
+    }
 
+    /**
+     * 释放锁:只有锁标识一致时才删除,避免加载超过锁的过期时间后删除其他节点获取的锁
+     * @param key
+     * @param token tryLock返回的锁标识
+     */
+    public void unLock(String key, String token) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+    }
+}
@@ -12,14 +12,75 @@ public class RedisConstants {
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop_type";
     public static final Long CACHE_SHOP_TYPE_TTL = 36000L;
+    public static final int CACHE_SHOP_LOCAL_SIZE = 10000;
+    public static final Long CACHE_SHOP_LOCAL_TTL = 30L;
+    public static final int CACHE_HOT_LOCAL_SIZE = 1000;
+    public static final Long CACHE_HOT_LOCAL_TTL = 5L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_KEY = "lock:";
+    public static final Long LOCK_CACHE_TTL = 10L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:release";
+    public static final String CACHE_REBUILD_CHANNEL = "cache:rebuilt";
+    public static final Long CACHE_REBUILD_WAIT = 200L;
+    public static final Long CACHE_HARD_TTL_FACTOR = 5L;
+    public static final Long CACHE_TTL_JITTER_PERCENT = 10L;
+
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final String BLOOM_BLOG_KEY = "bloom:blog";
+    public static final String BLOOM_USER_KEY = "bloom:user";
+    public static final String BLOOM_VOUCHER_KEY = "bloom:voucher";
+    public static final String BLOOM_READY_SUFFIX = ":ready";
+    public static final String BLOOM_TMP_SUFFIX = ":tmp";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+    public static final String BLOOM_REBUILD_LOCK = "bloom:rebuild:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_STREAM_KEY = "stream.orders:";
+    public static final String SECKILL_STREAM_GROUP = "g1";
+    public static final String SECKILL_ORDER_LEASE_KEY = "seckill:order:lease:";
+    public static final String SECKILL_DLQ_KEY = "stream.orders.dlq";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    public static final String SECKILL_BORROW_KEY = "seckill:borrow:";
+    public static final String SECKILL_BORROWED_KEY = "seckill:borrowed:";
+    public static final Long SECKILL_BORROWED_TTL = 86400L;
+    public static final int SECKILL_WINDOW_LOCAL_SIZE = 10000;
+    public static final Long SECKILL_WINDOW_LOCAL_TTL = 30L;
+    public static final Long SECKILL_WINDOW_NONE_TTL = 10L;
+    public static final String SECKILL_PRELOAD_CHANNEL = "seckill:preload";
+    public static final String SECKILL_LEGACY_MIGRATED_KEY = "seckill:legacy:migrated";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_USER_KEY = "blog:liked:user:";
+    public static final int BLOG_LIKED_USER_SIZE = 500;
+    public static final Long BLOG_LIKED_USER_TTL = 30L;
+    public static final String BLOG_LIKE_DELTA_KEY = "{blog:like:delta}";
+    public static final String BLOG_LIKE_PROCESSING_KEY = "{blog:like:delta}:processing";
+    public static final int BLOG_LIKE_FLUSH_BATCH = 500;
+    public static final String BLOG_HOT_KEY = "{blog:hot}";
+    public static final String BLOG_HOT_EPOCH_KEY = "{blog:hot}:epoch";
+    public static final String BLOG_HOT_TMP_KEY = "{blog:hot}:tmp";
+    public static final String BLOG_HOT_LOCK = "blog:hot";
+    public static final int BLOG_HOT_MAX_SIZE = 10000;
     public static final String USER_FOLLOW_KEY = "follows:";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_CELEBRITY_KEY = "feed:celebrities";
+    public static final String FEED_FANOUT_STREAM_KEY = "stream.feed.fanout";
+    public static final String FEED_FANOUT_GROUP = "g1";
+    public static final String FEED_FANOUT_DLQ_KEY = "stream.feed.fanout.dlq";
+    public static final String FEED_FANOUT_CHECKPOINT_KEY = "feed:fanout:checkpoint";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_LOADED_KEY = "shop:geo:loaded";
+    public static final String SHOP_GEO_CHANGE_CHANNEL = "shop:geo:changed";
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String ID_WORKER_KEY = "id:worker:";
 }
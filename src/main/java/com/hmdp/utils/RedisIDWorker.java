@@ -1,8 +1,13 @@
 package com.hmdp.utils;
 
+import com.hmdp.utils.id.SegmentIdAllocator;
+import com.hmdp.utils.id.SnowflakeIdGenerator;
+import com.hmdp.utils.id.WorkerIdLease;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
@@ -22,9 +27,35 @@ public class RedisIDWorker {
      * 序列号位数
      */
     private static final int COUNT_BIT = 32;
+    /**
+     * 每个ID一次INCR
+     */
+    public static final String MODE_INCR = "incr";
+    /**
+     * 号段模式:一次INCRBY预留一段序列号,进程内分配
+     */
+    public static final String MODE_SEGMENT = "segment";
+    /**
+     * 雪花算法:workerId从Redis租用,ID在进程内生成
+     */
+    public static final String MODE_SNOWFLAKE = "snowflake";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
 
     private StringRedisTemplate stringRedisTemplate;
 
+    @Value("${hmdp.id.mode:segment}")
+    private String mode = MODE_SEGMENT;
+    @Value("${hmdp.id.segment-step:1000}")
+    private int segmentStep = 1000;
+    @Value("${hmdp.id.worker-ttl:60}")
+    private long workerTtl = 60;
+    @Value("${hmdp.id.max-clock-drift:5}")
+    private long maxClockDrift = 5;
+
+    private volatile SegmentIdAllocator segmentIdAllocator;
+    private volatile SnowflakeIdGenerator snowflakeIdGenerator;
+
     /**
      * 构造函数注入
      * @param stringRedisTemplate
@@ -33,7 +64,34 @@ public class RedisIDWorker {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public void setSegmentStep(int segmentStep) {
+        this.segmentStep = segmentStep;
+    }
+
+    public void setWorkerTtl(long workerTtl) {
+        this.workerTtl = workerTtl;
+    }
+
+    public void setMaxClockDrift(long maxClockDrift) {
+        this.maxClockDrift = maxClockDrift;
+    }
+
     public long nextId(String prefixKey) {
+        if(MODE_SEGMENT.equals(mode)) {
+            return segmentIdAllocator().nextId(prefixKey);
+        }
+        if(MODE_SNOWFLAKE.equals(mode)) {
+            //workerId全局唯一,不需要按业务前缀区分
+            return snowflakeIdGenerator().nextId();
+        }
+        return incrId(prefixKey);
+    }
+
+    private long incrId(String prefixKey) {
         /**
          * 符号位(1位) + 时间戳(31位) + 序列号(32位)
          */
@@ -43,12 +101,53 @@ public class RedisIDWorker {
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         //2.生成序列号
         //2.1 获取当前日期,精确到天,用冒号分隔在Redis中会分开储存,便于统计
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        String date = now.format(DATE_FORMATTER);
         //2.2 自增长(后面增加日期的原因是可能随着业务的扩大,key的数量会不断增多,因此加上每天的日期)
         long count = stringRedisTemplate.opsForValue().increment("icr:" + prefixKey + ":" + date);
-        return timestamp << 32 | count;
+        return timestamp << COUNT_BIT | count;
     }
 
+    private SegmentIdAllocator segmentIdAllocator() {
+        SegmentIdAllocator allocator = segmentIdAllocator;
+        if(allocator == null) {
+            synchronized (this) {
+                allocator = segmentIdAllocator;
+                if(allocator == null) {
+                    allocator = new SegmentIdAllocator(stringRedisTemplate, BEGIN_TIMESTAMP, COUNT_BIT, segmentStep);
+                    segmentIdAllocator = allocator;
+                }
+            }
+        }
+        return allocator;
+    }
+
+    private SnowflakeIdGenerator snowflakeIdGenerator() {
+        SnowflakeIdGenerator generator = snowflakeIdGenerator;
+        if(generator == null) {
+            synchronized (this) {
+                generator = snowflakeIdGenerator;
+                if(generator == null) {
+                    WorkerIdLease lease = new WorkerIdLease(stringRedisTemplate, SnowflakeIdGenerator.MAX_WORKERS, workerTtl,
+                            BEGIN_TIMESTAMP, maxClockDrift);
+                    generator = new SnowflakeIdGenerator(lease, BEGIN_TIMESTAMP, maxClockDrift);
+                    generator.start();
+                    snowflakeIdGenerator = generator;
+                }
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * 停机时释放workerId,并记录使用到的时间戳
+     */
+    @PreDestroy
+    public void shutdown() {
+        SnowflakeIdGenerator generator = snowflakeIdGenerator;
+        if(generator != null) {
+            generator.stop();
+        }
+    }
 
     public static void main(String[] args) {
         LocalDateTime time = LocalDateTime.of(2022,1,1,0,0,0);
@@ -0,0 +1,152 @@
+package com.hmdp.utils.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-21:30
+ * @Description: 进程内布隆过滤器(Redis位图的本地副本)
+ * 位的编号与Redis位图一致(SETBIT的offset),便于整体从Redis加载以及增量同步
+ * 判断结果为不存在时一定不存在;判断结果为存在时可能误判(误判率由位数组长度和哈希函数个数决定)
+ */
+public class BloomFilter {
+
+    private final String redisKey;
+    private final long numBits;
+    private final int numHashFunctions;
+    private volatile AtomicLongArray bits;
+    //未完成初始化之前,所有判断都返回可能存在(宁可放行,不可误拦)
+    private volatile boolean ready;
+
+    /**
+     * @param redisKey Redis位图的key
+     * @param expectedInsertions 预计插入的元素数量
+     * @param fpp 期望的误判率
+     */
+    public BloomFilter(String redisKey, long expectedInsertions, double fpp) {
+        this.redisKey = redisKey;
+        //m = -n*ln(p)/(ln2)^2,向上取整为64的倍数
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (m + 63) / 64 * 64;
+        //k = m/n*ln2
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    public String getRedisKey() {
+        return redisKey;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 计算元素对应的k个位的编号
+     */
+    public long[] offsets(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        long[] offsets = new long[numHashFunctions];
+        for (int i = 0; i < numHashFunctions; i++) {
+            long combined = hash1 + i * hash2;
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+        }
+        return offsets;
+    }
+
+    public boolean mightContain(long id) {
+        if(!ready) {
+            return true;
+        }
+        AtomicLongArray current = bits;
+        for (long offset : offsets(id)) {
+            if((current.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只更新本地副本
+     */
+    public void put(long id) {
+        for (long offset : offsets(id)) {
+            setBit(bits, offset);
+        }
+    }
+
+    /**
+     * 从Redis位图加载本地副本(Redis位图中offset为n的位是第n/8个字节的从高到低第n%8位)
+     * 布隆过滤器只会置位不会清除,因此与本地已有的位取并集,加载期间本地新增的元素不会丢失
+     * @param bitmap Redis中GET得到的位图数据,长度可能小于位数组长度(尾部全为0)
+     */
+    public void load(byte[] bitmap) {
+        AtomicLongArray current = bits;
+        AtomicLongArray loaded = new AtomicLongArray((int) (numBits / 64));
+        for (int i = 0; i < loaded.length(); i++) {
+            loaded.set(i, current.get(i));
+        }
+        int length = (int) Math.min(bitmap.length, numBits / 8);
+        for (int i = 0; i < length; i++) {
+            int b = bitmap[i] & 0xFF;
+            if(b == 0) {
+                continue;
+            }
+            for (int j = 0; j < 8; j++) {
+                if((b & (0x80 >>> j)) != 0) {
+                    setBit(loaded, i * 8L + j);
+                }
+            }
+        }
+        this.bits = loaded;
+        this.ready = true;
+        //加载期间对旧数组的置位补到新数组上
+        for (int i = 0; i < loaded.length(); i++) {
+            long missed = current.get(i) & ~loaded.get(i);
+            if(missed != 0) {
+                loaded.getAndAccumulate(i, missed, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /**
+     * 将本地副本导出为Redis位图格式
+     */
+    public byte[] toBitmap() {
+        byte[] bitmap = new byte[(int) (numBits / 8)];
+        AtomicLongArray current = bits;
+        for (long offset = 0; offset < numBits; offset++) {
+            if((current.get((int) (offset >>> 6)) & (1L << (offset & 63))) != 0) {
+                bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+            }
+        }
+        return bitmap;
+    }
+
+    private static void setBit(AtomicLongArray array, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << (offset & 63);
+        long old;
+        do {
+            old = array.get(index);
+            if((old & mask) != 0) {
+                return;
+            }
+        } while (!array.compareAndSet(index, old, old | mask));
+    }
+
+    /**
+     * 64位哈希混淆(SplitMix64的finalizer)
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
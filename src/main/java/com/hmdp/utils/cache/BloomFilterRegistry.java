@@ -0,0 +1,253 @@
+package com.hmdp.utils.cache;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-21:40
+ * @Description: 布隆过滤器注册表,拦截商铺、博客、用户、优惠券中不存在的id(防止恶意扫描id造成缓存穿透)
+ * 1.Redis位图为全局唯一的数据源,每个节点在进程内保留一份副本,判断是否存在时无需访问Redis
+ * 2.启动时若Redis中没有位图,由获取到锁的节点扫描数据库id重建,其余节点等待重建完成后加载
+ * 3.新增数据时同时写入本地副本和Redis位图,并广播给其他节点;定期从Redis全量同步,弥补丢失的广播消息
+ */
+@Slf4j
+@Component
+public class BloomFilterRegistry implements MessageListener, ApplicationRunner {
+
+    private static final int SCAN_BATCH_SIZE = 10000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisLockFactory redisLockFactory;
+    private final ShopMapper shopMapper;
+    private final BlogMapper blogMapper;
+    private final UserMapper userMapper;
+    private final VoucherMapper voucherMapper;
+
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    //Redis位图的key -> 布隆过滤器
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    //缓存key前缀 -> 布隆过滤器
+    private final Map<String, BloomFilter> prefixFilters = new ConcurrentHashMap<>();
+    //Redis位图的key -> 数据来源
+    private final Map<String, BaseMapper<?>> sources = new ConcurrentHashMap<>();
+
+    public BloomFilterRegistry(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                               RedisLockFactory redisLockFactory, ShopMapper shopMapper, BlogMapper blogMapper, UserMapper userMapper, VoucherMapper voucherMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.redisLockFactory = redisLockFactory;
+        this.shopMapper = shopMapper;
+        this.blogMapper = blogMapper;
+        this.userMapper = userMapper;
+        this.voucherMapper = voucherMapper;
+    }
+
+    @PostConstruct
+    private void init() {
+        register(RedisConstants.BLOOM_SHOP_KEY, shopMapper, RedisConstants.CACHE_SHOP_KEY);
+        register(RedisConstants.BLOOM_BLOG_KEY, blogMapper, RedisConstants.CACHE_BLOG_KEY);
+        register(RedisConstants.BLOOM_USER_KEY, userMapper, RedisConstants.CACHE_USER_KEY);
+        register(RedisConstants.BLOOM_VOUCHER_KEY, voucherMapper, null);
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * 注册布隆过滤器
+     * @param redisKey Redis位图的key
+     * @param source 重建时扫描id的数据来源
+     * @param cacheKeyPrefix 由CacheClient查询时对应的缓存key前缀,可以为null
+     */
+    public void register(String redisKey, BaseMapper<?> source, String cacheKeyPrefix) {
+        BloomFilter filter = new BloomFilter(redisKey, expectedInsertions, fpp);
+        filters.put(redisKey, filter);
+        sources.put(redisKey, source);
+        if(cacheKeyPrefix != null) {
+            prefixFilters.put(cacheKeyPrefix, filter);
+        }
+    }
+
+    /**
+     * 启动完成后在后台线程中加载或重建,加载完成之前所有判断都放行
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread loader = new Thread(() -> filters.values().forEach(this::loadOrRebuild), "bloom-filter-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * id是否可能存在
+     * @param redisKey Redis位图的key
+     * @param id 数据id
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String redisKey, Long id) {
+        if(id == null) {
+            return false;
+        }
+        BloomFilter filter = filters.get(redisKey);
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * 根据缓存key前缀查找布隆过滤器
+     * @param cacheKeyPrefix 缓存key前缀
+     * @return 布隆过滤器,未注册时返回null
+     */
+    public BloomFilter forCachePrefix(String cacheKeyPrefix) {
+        return prefixFilters.get(cacheKeyPrefix);
+    }
+
+    /**
+     * 新增数据后写入布隆过滤器(本地副本 + Redis位图 + 广播其他节点)
+     * @param redisKey Redis位图的key
+     * @param id 数据id
+     */
+    public void add(String redisKey, Long id) {
+        BloomFilter filter = filters.get(redisKey);
+        if(filter == null || id == null) {
+            return;
+        }
+        filter.put(id);
+        byte[] rawKey = redisKey.getBytes(StandardCharsets.UTF_8);
+        long[] offsets = filter.offsets(id);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.setBit(rawKey, offset, true);
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(RedisConstants.BLOOM_ADD_CHANNEL, redisKey + "@" + id);
+    }
+
+    /**
+     * 接收其他节点广播的新增id
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf('@');
+        BloomFilter filter = filters.get(body.substring(0, index));
+        if(filter != null) {
+            filter.put(Long.parseLong(body.substring(index + 1)));
+        }
+    }
+
+    /**
+     * 定期从Redis全量同步本地副本
+     */
+    @Scheduled(initialDelayString = "${hmdp.bloom.sync-interval:300000}", fixedDelayString = "${hmdp.bloom.sync-interval:300000}")
+    public void syncFromRedis() {
+        filters.values().forEach(filter -> {
+            if(BooleanUtil.isTrue(stringRedisTemplate.hasKey(filter.getRedisKey() + RedisConstants.BLOOM_READY_SUFFIX))) {
+                loadFromRedis(filter);
+            }
+        });
+    }
+
+    private void loadOrRebuild(BloomFilter filter) {
+        String redisKey = filter.getRedisKey();
+        String readyKey = redisKey + RedisConstants.BLOOM_READY_SUFFIX;
+        //重建耗时与数据量有关,由看门狗续期,只有持有者才能释放
+        RedisReentrantLock lock = redisLockFactory.getLock(RedisConstants.BLOOM_REBUILD_LOCK + redisKey);
+        try {
+            while (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(readyKey))) {
+                if(lock.tryLock()) {
+                    try {
+                        //DoubleCheck,获取锁之前其他节点可能已重建完成
+                        if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(readyKey))) {
+                            rebuild(filter, readyKey);
+                        }
+                    } finally {
+                        lock.unLock();
+                    }
+                    break;
+                }
+                //其他节点正在重建,等待其完成(后台线程,不影响请求)
+                Thread.sleep(1000);
+            }
+            loadFromRedis(filter);
+            log.info("布隆过滤器{}加载完成", redisKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("布隆过滤器{}加载失败,暂时放行所有请求", redisKey, e);
+        }
+    }
+
+    /**
+     * 扫描数据库中的全部id重建Redis位图
+     * 重建期间新增的id已通过SETBIT写入Redis位图,因此用BITOP OR合并而不是直接覆盖
+     */
+    private void rebuild(BloomFilter filter, String readyKey) {
+        String redisKey = filter.getRedisKey();
+        @SuppressWarnings("unchecked")
+        BaseMapper<Object> source = (BaseMapper<Object>) sources.get(redisKey);
+        BloomFilter building = new BloomFilter(redisKey, expectedInsertions, fpp);
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Object> ids = source.selectObjs(new QueryWrapper<>()
+                    .select("id").gt("id", lastId).orderByAsc("id").last("limit " + SCAN_BATCH_SIZE));
+            if(ids.isEmpty()) {
+                break;
+            }
+            for (Object id : ids) {
+                building.put(((Number) id).longValue());
+            }
+            count += ids.size();
+            lastId = ((Number) ids.get(ids.size() - 1)).longValue();
+        }
+        byte[] rawKey = redisKey.getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKey = (redisKey + RedisConstants.BLOOM_TMP_SUFFIX).getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = building.toBitmap();
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.set(tmpKey, bitmap);
+            connection.bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tmpKey);
+            connection.del(tmpKey);
+            return null;
+        });
+        stringRedisTemplate.opsForValue().set(readyKey, "1");
+        log.info("布隆过滤器{}重建完成,共{}个id", redisKey, count);
+    }
+
+    private void loadFromRedis(BloomFilter filter) {
+        byte[] rawKey = filter.getRedisKey().getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        filter.load(bitmap == null ? new byte[0] : bitmap);
+    }
+}
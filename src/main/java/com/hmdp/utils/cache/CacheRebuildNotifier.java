@@ -0,0 +1,78 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-19:25
+ * @Description: 跨节点缓存重建通知
+ * 获取重建锁的节点重建完成后广播key,其他节点上等待该key的线程被唤醒后重新读取Redis,而不是休眠轮询
+ */
+@Slf4j
+@Component
+public class CacheRebuildNotifier implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    //key -> 等待重建完成的信号
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+
+    public CacheRebuildNotifier(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.CACHE_REBUILD_CHANNEL));
+    }
+
+    /**
+     * 注册等待某个key重建完成的信号
+     * 注意:调用方应在注册之后再检查一次Redis,避免通知在注册之前就已发出而错过
+     * @param key 缓存key
+     * @return 重建完成时被完成的Future
+     */
+    public CompletableFuture<Void> await(String key) {
+        return waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+    }
+
+    /**
+     * 等待超时后移除信号,避免一直没有收到通知的key残留
+     * @param key 缓存key
+     * @param signal await返回的信号
+     */
+    public void cancel(String key, CompletableFuture<Void> signal) {
+        waiters.remove(key, signal);
+    }
+
+    /**
+     * 广播key重建完成
+     * @param key 缓存key
+     */
+    public void notifyRebuilt(String key) {
+        stringRedisTemplate.convertAndSend(RedisConstants.CACHE_REBUILD_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        CompletableFuture<Void> signal = waiters.remove(key);
+        if(signal != null) {
+            signal.complete(null);
+        }
+    }
+}
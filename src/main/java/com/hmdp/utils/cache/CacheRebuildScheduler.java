@@ -0,0 +1,127 @@
+package com.hmdp.utils.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:50
+ * @Description: 缓存异步重建调度器
+ * 1.有界队列,队列满时直接丢弃重建任务(调用方继续返回旧数据,下一次请求会再次提交)
+ * 2.同一个key同一时刻只有一个重建任务在排队或执行
+ * 3.重建异常会被记录日志并计数,不会被线程池吞掉
+ * 4.统计队列深度、重建耗时以及失败次数
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+
+    @Value("${hmdp.cache.rebuild.threads:4}")
+    private int threads;
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    //正在排队或执行重建的key
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存key,用于去重
+     * @param task 重建任务
+     * @return 是否提交成功(重复提交或队列已满时返回false)
+     */
+    public boolean submit(String key, Runnable task) {
+        if(!inFlight.add(key)) {
+            deduplicated.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(key, task));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            rejected.incrementAndGet();
+            log.warn("缓存重建队列已满,丢弃重建任务:{}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.nanoTime();
+        try {
+            task.run();
+            succeeded.incrementAndGet();
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            log.error("缓存重建失败:{}", key, e);
+        } finally {
+            inFlight.remove(key);
+            long latency = System.nanoTime() - begin;
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+    /**
+     * 重建任务统计
+     */
+    public Map<String, Object> metrics() {
+        long finished = succeeded.get() + failed.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", executor.getQueue().size());
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("activeThreads", executor.getActiveCount());
+        metrics.put("inFlightKeys", inFlight.size());
+        metrics.put("submitted", submitted.get());
+        metrics.put("deduplicated", deduplicated.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("succeeded", succeeded.get());
+        metrics.put("failed", failed.get());
+        metrics.put("avgLatencyMs", finished == 0 ? 0 : totalLatencyNanos.get() / finished / 1_000_000.0);
+        metrics.put("maxLatencyMs", maxLatencyNanos.get() / 1_000_000.0);
+        return metrics;
+    }
+}
@@ -0,0 +1,75 @@
+package com.hmdp.utils.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-22:10
+ * @Description: Count-Min Sketch,用固定大小的计数矩阵估算每个key的访问次数
+ * 估算值只会偏大不会偏小(哈希冲突导致),偏大的幅度由宽度决定,与key的数量无关
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param depth 哈希函数个数(行数),不超过4
+     * @param width 每行的计数器个数,必须是2的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.min(depth, SEEDS.length);
+        this.width = width;
+        this.counters = new AtomicLongArray(this.depth * width);
+    }
+
+    public void add(String key, long count) {
+        int hash = key.hashCode();
+        for (int row = 0; row < depth; row++) {
+            counters.addAndGet(index(row, hash), count);
+        }
+    }
+
+    public long estimate(String key) {
+        int hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.get(index(row, hash)));
+        }
+        return min;
+    }
+
+    /**
+     * 对多个sketch的估算:每一行先把各sketch对应位置的计数求和,再取各行的最小值
+     * (等价于把多个时间片的sketch合并成一个之后再估算)
+     */
+    public static long estimate(CountMinSketch[] sketches, String key) {
+        CountMinSketch first = sketches[0];
+        int hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < first.depth; row++) {
+            int index = first.index(row, hash);
+            long sum = 0;
+            for (CountMinSketch sketch : sketches) {
+                sum += sketch.counters.get(index);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private int index(int row, int hash) {
+        long h = (hash + SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        return row * width + (int) (h & (width - 1));
+    }
+}
@@ -0,0 +1,155 @@
+package com.hmdp.utils.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-22:20
+ * @Description: 热点key探测
+ * 1.按采样率对Redis读请求抽样计数,计数写入当前时间片的Count-Min Sketch,多个时间片组成滑动窗口
+ * 2.窗口内访问次数超过阈值的key判定为热点key,由调用方提升到进程内短期缓存,不再每次访问Redis
+ * 3.维护一个有界的候选集合用于输出访问次数最多的前K个key
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    private static final int MAX_CANDIDATES = 1024;
+
+    @Value("${hmdp.cache.hotkey.enabled:true}")
+    private boolean enabled;
+    //每N次读取抽样1次
+    @Value("${hmdp.cache.hotkey.sample-rate:8}")
+    private int sampleRate;
+    //滑动窗口的时间片个数,时间片长度为 hmdp.cache.hotkey.slot-millis
+    @Value("${hmdp.cache.hotkey.slots:10}")
+    private int slotCount;
+    @Value("${hmdp.cache.hotkey.slot-millis:1000}")
+    private long slotMillis;
+    //窗口内访问次数达到该值判定为热点key
+    @Value("${hmdp.cache.hotkey.threshold:1000}")
+    private long threshold;
+    @Value("${hmdp.cache.hotkey.top-k:20}")
+    private int topK;
+
+    private CountMinSketch[] slots;
+    private volatile int current;
+
+    //候选key -> 最近一次估算的访问次数
+    private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+    //当前的热点key
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+    private volatile List<Map<String, Object>> topSnapshot = Collections.emptyList();
+
+    @PostConstruct
+    private void init() {
+        slots = new CountMinSketch[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        }
+    }
+
+    /**
+     * 记录一次读取
+     * @param key 完整的key
+     * @return 是否为热点key
+     */
+    public boolean record(String key) {
+        if(!enabled) {
+            return false;
+        }
+        //1.抽样,被抽中的一次读取按sampleRate次计数,估算值仍与真实访问次数同量级
+        if(sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return hotKeys.containsKey(key);
+        }
+        slots[current].add(key, sampleRate);
+        //2.估算滑动窗口内的访问次数
+        long count = CountMinSketch.estimate(slots, key);
+        //3.超过阈值的十分之一进入候选集合(候选集合已满时只接收热点key)
+        if(count >= threshold / 10 && (candidates.size() < MAX_CANDIDATES || count >= threshold)) {
+            candidates.put(key, count);
+        }
+        //4.超过阈值判定为热点key
+        if(count >= threshold) {
+            if(hotKeys.put(key, count) == null) {
+                log.info("发现热点key:{},窗口内访问次数约为{}", key, count);
+            }
+            return true;
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 滑动窗口前进一个时间片:清空最旧的时间片,重新估算候选key,淘汰已经冷却的key
+     */
+    @Scheduled(fixedRateString = "${hmdp.cache.hotkey.slot-millis:1000}")
+    public void rotate() {
+        if(!enabled) {
+            return;
+        }
+        int next = (current + 1) % slotCount;
+        slots[next].clear();
+        current = next;
+
+        List<Map.Entry<String, Long>> estimated = new ArrayList<>();
+        candidates.keySet().forEach(key -> {
+            long count = CountMinSketch.estimate(slots, key);
+            if(count < threshold / 10) {
+                candidates.remove(key);
+            } else {
+                candidates.put(key, count);
+                estimated.add(new AbstractMap.SimpleEntry<>(key, count));
+            }
+            if(count < threshold && hotKeys.remove(key) != null) {
+                log.info("热点key冷却:{}", key);
+            }
+        });
+        //hotKeys中可能存在已被挤出候选集合的key
+        hotKeys.keySet().removeIf(key -> CountMinSketch.estimate(slots, key) < threshold);
+
+        estimated.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : estimated.subList(0, Math.min(topK, estimated.size()))) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("count", entry.getValue());
+            item.put("hot", hotKeys.containsKey(entry.getKey()));
+            top.add(item);
+        }
+        topSnapshot = top;
+    }
+
+    /**
+     * 滑动窗口内访问次数最多的前K个key(每个时间片刷新一次)
+     */
+    public Map<String, Object> topK() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("windowMillis", slotMillis * slotCount);
+        result.put("threshold", threshold);
+        result.put("sampleRate", sampleRate);
+        result.put("hotKeys", hotKeys.size());
+        result.put("candidates", candidates.size());
+        result.put("top", topSnapshot);
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+package com.hmdp.utils.cache;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-18:45
+ * @Description: 进程内一级缓存(L1),位于Redis(L2)之前
+ * 1.按key前缀划分区域,每个区域有独立的容量和TTL(超出容量按LRU淘汰,超过TTL自动失效)
+ * 2.删除缓存时通过Redis发布订阅广播失效消息,所有节点同时清除本地副本
+ * 3.即使失效消息丢失(如订阅连接断开),本地副本最多在TTL时间后过期,陈旧时间有上界
+ * 4.热点key区域:不区分前缀,存放被探测为热点的key,TTL很短
+ */
+@Slf4j
+@Component
+public class NearCache implements MessageListener {
+
+    /**
+     * 空值占位对象,用于在本地缓存数据库中不存在的数据(防止缓存穿透)
+     */
+    public static final Object NULL_VALUE = new Object();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    //key前缀 -> 本地缓存区域
+    private final Map<String, Cache<String, Object>> regions = new ConcurrentHashMap<>();
+    //热点key区域
+    private final Cache<String, Object> hotRegion = CacheUtil.newLRUCache(RedisConstants.CACHE_HOT_LOCAL_SIZE,
+            TimeUnit.SECONDS.toMillis(RedisConstants.CACHE_HOT_LOCAL_TTL));
+
+    @Value("${hmdp.cache.local.enabled:true}")
+    private boolean enabled;
+
+    public NearCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        //默认为商铺缓存开启本地缓存
+        registerPolicy(RedisConstants.CACHE_SHOP_KEY, RedisConstants.CACHE_SHOP_LOCAL_SIZE,
+                RedisConstants.CACHE_SHOP_LOCAL_TTL, TimeUnit.SECONDS);
+        //订阅缓存失效频道
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 为某一key前缀注册本地缓存策略
+     * @param keyPrefix key前缀
+     * @param capacity 最大缓存条数
+     * @param ttl 本地缓存存活时间(同时也是失效消息丢失时的最大陈旧时间)
+     * @param timeUnit 时间单位
+     */
+    public void registerPolicy(String keyPrefix, int capacity, long ttl, TimeUnit timeUnit) {
+        regions.put(keyPrefix, CacheUtil.newLRUCache(capacity, timeUnit.toMillis(ttl)));
+    }
+
+    /**
+     * 查询本地缓存
+     * @param key 完整的key
+     * @return 缓存对象;若缓存的是空值则返回 NULL_VALUE;未命中返回null
+     */
+    public Object get(String key) {
+        if(!enabled) {
+            return null;
+        }
+        //不刷新最后访问时间,保证热点数据也会按TTL过期
+        Cache<String, Object> region = regionOf(key);
+        Object value = region == null ? null : region.get(key, false);
+        return value != null ? value : hotRegion.get(key, false);
+    }
+
+    /**
+     * 写入本地缓存,value为null时写入空值占位对象
+     * @param key 完整的key
+     * @param value 缓存对象
+     */
+    public void put(String key, Object value) {
+        Cache<String, Object> region = regionOf(key);
+        if(region == null) {
+            return;
+        }
+        region.put(key, value == null ? NULL_VALUE : value);
+    }
+
+    /**
+     * 将热点key提升到本地缓存(无论该key前缀是否注册了本地缓存策略)
+     * @param key 完整的key
+     * @param value 缓存对象
+     */
+    public void promote(String key, Object value) {
+        if(!enabled) {
+            return;
+        }
+        hotRegion.put(key, value == null ? NULL_VALUE : value);
+    }
+
+    /**
+     * 使所有节点上的本地缓存失效
+     * @param key 完整的key
+     */
+    public void invalidate(String key) {
+        evictLocal(key);
+        if(enabled) {
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+        }
+    }
+
+    /**
+     * 只清除当前节点的本地缓存
+     * @param key 完整的key
+     */
+    public void evictLocal(String key) {
+        Cache<String, Object> region = regionOf(key);
+        if(region != null) {
+            region.remove(key);
+        }
+        hotRegion.remove(key);
+    }
+
+    /**
+     * 接收其他节点广播的失效消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到本地缓存失效消息:{}", key);
+        evictLocal(key);
+    }
+
+    private Cache<String, Object> regionOf(String key) {
+        if(!enabled) {
+            return null;
+        }
+        for (Map.Entry<String, Cache<String, Object>> entry : regions.entrySet()) {
+            if(key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-19:20
+ * @Description: 进程内请求合并(single-flight)
+ * 同一个key同一时刻只有一个线程真正执行加载,其余并发调用者等待同一个Future的结果,
+ * 加载结束后立即移除,下一次调用重新加载(不做缓存,缓存由调用方负责)
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, call);
+        //已有线程在加载该key,等待其结果
+        if(inFlight != null) {
+            try {
+                return (T) inFlight.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+        //当前线程负责加载
+        try {
+            T value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * 当前正在加载中的key数量
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+}
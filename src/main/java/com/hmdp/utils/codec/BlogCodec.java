@@ -0,0 +1,67 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Blog;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.hmdp.utils.codec.BinaryCodecSupport.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:10
+ * @Description: 博客缓存编解码器(isLike与当前登录用户相关,不写入缓存)
+ */
+@Component
+public class BlogCodec implements CacheCodec<Blog> {
+
+    private static final byte VERSION = 1;
+
+    @Override
+    public Class<Blog> type() {
+        return Blog.class;
+    }
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(Blog blog, DataOutput out) throws IOException {
+        writeLong(out, blog.getId());
+        writeLong(out, blog.getShopId());
+        writeLong(out, blog.getUserId());
+        writeString(out, blog.getIcon());
+        writeString(out, blog.getName());
+        writeString(out, blog.getTitle());
+        writeString(out, blog.getImages());
+        writeString(out, blog.getContent());
+        writeInt(out, blog.getLiked());
+        writeInt(out, blog.getComments());
+        writeDateTime(out, blog.getCreateTime());
+        writeDateTime(out, blog.getUpdateTime());
+    }
+
+    @Override
+    public Blog read(byte version, DataInput in) throws IOException {
+        if(version != VERSION) {
+            throw unsupportedVersion(Blog.class, version);
+        }
+        return new Blog()
+                .setId(readLong(in))
+                .setShopId(readLong(in))
+                .setUserId(readLong(in))
+                .setIcon(readString(in))
+                .setName(readString(in))
+                .setTitle(readString(in))
+                .setImages(readString(in))
+                .setContent(readString(in))
+                .setLiked(readInt(in))
+                .setComments(readInt(in))
+                .setCreateTime(readDateTime(in))
+                .setUpdateTime(readDateTime(in));
+    }
+}
@@ -0,0 +1,40 @@
+package com.hmdp.utils.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-19:50
+ * @Description: 缓存对象的二进制编解码器
+ * 实现类注册为Spring Bean即可被CacheCodecRegistry发现;未注册编解码器的类型仍使用Hutool JSON
+ * @param <T> 编解码的对象类型
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 编解码的对象类型
+     */
+    Class<T> type();
+
+    /**
+     * 当前写入时使用的结构版本号,字段增减时递增,读取时按数据中的版本号解析
+     */
+    byte version();
+
+    /**
+     * 写入对象的字段
+     * @param value 对象
+     * @param out 输出
+     */
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     * 按指定版本读取对象的字段
+     * @param version 数据写入时的版本号
+     * @param in 输入
+     * @return 对象
+     */
+    T read(byte version, DataInput in) throws IOException;
+}
@@ -0,0 +1,32 @@
+package com.hmdp.utils.codec;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:15
+ * @Description: 编解码器注册表,收集容器中所有的CacheCodec,按对象类型查找
+ */
+@Component
+public class CacheCodecRegistry {
+
+    private final Map<Class<?>, CacheCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    public CacheCodecRegistry(List<CacheCodec<?>> codecList) {
+        codecList.forEach(codec -> codecs.put(codec.type(), codec));
+    }
+
+    /**
+     * 查找类型对应的编解码器
+     * @param type 对象类型
+     * @return 编解码器,没有注册时返回null(使用JSON)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CacheCodec<T> get(Class<T> type) {
+        return (CacheCodec<T>) codecs.get(type);
+    }
+}
@@ -0,0 +1,82 @@
+package com.hmdp.utils.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-19:55
+ * @Description: 二进制缓存数据的固定头部
+ * 格式: 魔数(1字节) + 结构版本号(1字节) + 逻辑过期时间毫秒值(8字节,0表示不设置逻辑过期) + 对象数据
+ * 逻辑过期时间位于固定偏移,判断是否过期时无需反序列化对象数据
+ */
+public class CacheEnvelope {
+
+    /**
+     * 魔数,JSON数据总是以可见字符开头,因此可以据此区分二进制数据和旧的JSON数据
+     */
+    public static final byte MAGIC = (byte) 0xCB;
+    public static final int HEADER_LENGTH = 10;
+
+    private CacheEnvelope() {
+    }
+
+    /**
+     * 编码
+     * @param codec 编解码器
+     * @param value 对象
+     * @param expireAt 逻辑过期时间(毫秒时间戳),0表示不设置逻辑过期
+     * @return 二进制数据
+     */
+    public static <T> byte[] encode(CacheCodec<T> codec, T value, long expireAt) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(codec.version());
+            out.writeLong(expireAt);
+            codec.write(value, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存对象编码失败:" + codec.type().getName(), e);
+        }
+    }
+
+    /**
+     * 解码对象数据
+     * @param codec 编解码器
+     * @param data 二进制数据
+     * @return 对象
+     */
+    public static <T> T decode(CacheCodec<T> codec, byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH));
+            return codec.read(data[1], in);
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存对象解码失败:" + codec.type().getName(), e);
+        }
+    }
+
+    /**
+     * 是否是带有固定头部的二进制数据
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC;
+    }
+
+    /**
+     * 只读取头部中的逻辑过期时间,不解析对象数据
+     * @return 逻辑过期时间(毫秒时间戳),0表示未设置
+     */
+    public static long readExpireAt(byte[] data) {
+        long expireAt = 0;
+        for (int i = 2; i < HEADER_LENGTH; i++) {
+            expireAt = (expireAt << 8) | (data[i] & 0xFF);
+        }
+        return expireAt;
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.ShopType;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.hmdp.utils.codec.BinaryCodecSupport.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:08
+ * @Description: 商铺类型缓存编解码器
+ */
+@Component
+public class ShopTypeCodec implements CacheCodec<ShopType> {
+
+    private static final byte VERSION = 1;
+
+    @Override
+    public Class<ShopType> type() {
+        return ShopType.class;
+    }
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(ShopType shopType, DataOutput out) throws IOException {
+        writeLong(out, shopType.getId());
+        writeString(out, shopType.getName());
+        writeString(out, shopType.getIcon());
+        writeInt(out, shopType.getSort());
+        writeDateTime(out, shopType.getCreateTime());
+        writeDateTime(out, shopType.getUpdateTime());
+    }
+
+    @Override
+    public ShopType read(byte version, DataInput in) throws IOException {
+        if(version != VERSION) {
+            throw unsupportedVersion(ShopType.class, version);
+        }
+        return new ShopType()
+                .setId(readLong(in))
+                .setName(readString(in))
+                .setIcon(readString(in))
+                .setSort(readInt(in))
+                .setCreateTime(readDateTime(in))
+                .setUpdateTime(readDateTime(in));
+    }
+}
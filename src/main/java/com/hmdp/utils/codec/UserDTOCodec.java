@@ -0,0 +1,50 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.dto.UserDTO;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.hmdp.utils.codec.BinaryCodecSupport.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:12
+ * @Description: 用户信息缓存编解码器
+ */
+@Component
+public class UserDTOCodec implements CacheCodec<UserDTO> {
+
+    private static final byte VERSION = 1;
+
+    @Override
+    public Class<UserDTO> type() {
+        return UserDTO.class;
+    }
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(UserDTO user, DataOutput out) throws IOException {
+        writeLong(out, user.getId());
+        writeString(out, user.getNickName());
+        writeString(out, user.getIcon());
+    }
+
+    @Override
+    public UserDTO read(byte version, DataInput in) throws IOException {
+        if(version != VERSION) {
+            throw unsupportedVersion(UserDTO.class, version);
+        }
+        UserDTO user = new UserDTO();
+        user.setId(readLong(in));
+        user.setNickName(readString(in));
+        user.setIcon(readString(in));
+        return user;
+    }
+}
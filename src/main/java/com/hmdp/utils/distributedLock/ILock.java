@@ -1,5 +1,7 @@
 package com.hmdp.utils.distributedLock;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @Author: xuyuchao
  * @Date: 2022-09-25-17:33
@@ -13,6 +15,18 @@ public interface ILock {
      */
     boolean tryLock(long timeoutSec);
 
+    /**
+     * 尝试获取锁,获取失败时最多等待waitTime
+     * 默认实现不支持等待,只尝试一次
+     * @param waitTime 最长等待时间
+     * @param leaseTime 过期时间,-1表示由看门狗自动续期直到释放锁
+     * @param unit 时间单位
+     * @return
+     */
+    default boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        return tryLock(leaseTime < 0 ? 30 : Math.max(unit.toSeconds(leaseTime), 1));
+    }
+
     /**
      * 释放锁
      */
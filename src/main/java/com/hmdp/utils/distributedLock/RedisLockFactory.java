@@ -0,0 +1,323 @@
+package com.hmdp.utils.distributedLock;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-04:50
+ * @Description: 可重入分布式锁工厂
+ * 1.创建 RedisReentrantLock,并负责加锁/释放的Lua脚本、看门狗续期和等待锁释放的通知
+ * 2.所有锁共用一个释放通知频道,消息内容为锁的key,只唤醒本节点等待该key的线程
+ * 3.统计获取锁的等待时间、持有时间、超时次数和续期情况
+ */
+@Slf4j
+@Component
+public class RedisLockFactory implements MessageListener {
+
+    private static final String KEY_PREFIX = "lock:";
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("reentrantLock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("reentrantUnlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("reentrantRenew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    //看门狗模式下锁的过期时间(毫秒),每1/3续期一次
+    @Value("${hmdp.lock.watchdog-timeout:30000}")
+    private long watchdogTimeout = 30000;
+
+    //节点标识,与线程id组成锁的持有者标识
+    private final String nodeId = UUID.randomUUID().toString(true);
+    //本节点持有的锁: 锁的key + 持有者标识 -> 持有记录
+    private final ConcurrentHashMap<String, Holding> holdings = new ConcurrentHashMap<>();
+    //本节点等待的锁: 锁的key -> 等待者
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //指标
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquiredAfterWait = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+    private final LongAdder renewals = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    public RedisLockFactory(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.LOCK_RELEASE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 获取锁对象
+     * @param name 业务名称,实际的key为 lock:name
+     * @return
+     */
+    public RedisReentrantLock getLock(String name) {
+        return new RedisReentrantLock(this, KEY_PREFIX + name);
+    }
+
+    long getWatchdogTimeout() {
+        return watchdogTimeout;
+    }
+
+    /**
+     * 尝试获取一次锁,不等待
+     */
+    boolean tryLockOnce(String key, long leaseMillis, boolean renew) {
+        if(tryAcquire(key, leaseMillis, renew) == null) {
+            acquired.increment();
+            return true;
+        }
+        timeouts.increment();
+        return false;
+    }
+
+    /**
+     * 执行一次加锁脚本
+     * @return null表示获取成功,否则为锁的剩余时间(毫秒)
+     */
+    private Long tryAcquire(String key, long leaseMillis, boolean renew) {
+        String owner = owner();
+        Long ttl = stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key), owner, String.valueOf(leaseMillis));
+        if(ttl == null) {
+            onAcquired(key, owner, leaseMillis, renew);
+        }
+        return ttl;
+    }
+
+    /**
+     * 获取锁,获取失败时等待锁释放的通知
+     * @param waitMillis 最长等待时间
+     * @param leaseMillis 过期时间,-1表示由看门狗续期
+     */
+    boolean acquire(String key, long waitMillis, long leaseMillis) throws InterruptedException {
+        boolean renew = leaseMillis < 0;
+        long lease = renew ? watchdogTimeout : leaseMillis;
+        //1.不等待
+        if(waitMillis <= 0) {
+            return tryLockOnce(key, lease, renew);
+        }
+        long begin = System.nanoTime();
+        Long ttl = tryAcquire(key, lease, renew);
+        if(ttl == null) {
+            acquired.increment();
+            return true;
+        }
+        long deadline = begin + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        //2.先登记等待,再重试,避免释放通知在登记之前发出而错过
+        Waiters waiting = waiters.compute(key, (k, w) -> {
+            Waiters v = w == null ? new Waiters() : w;
+            v.count++;
+            return v;
+        });
+        try {
+            while (true) {
+                ttl = tryAcquire(key, lease, renew);
+                if(ttl == null) {
+                    long waited = System.nanoTime() - begin;
+                    acquired.increment();
+                    acquiredAfterWait.increment();
+                    waitNanos.add(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    timeouts.increment();
+                    return false;
+                }
+                //3.等待释放通知,最多等到锁过期(通知丢失或持有者宕机时也能重试)
+                long parkNanos = ttl >= 0 ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ttl)) : remaining;
+                waiting.semaphore.tryAcquire(parkNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            waiters.computeIfPresent(key, (k, w) -> --w.count == 0 ? null : w);
+        }
+    }
+
+    /**
+     * 释放锁(重入多次时只减少重入次数)
+     */
+    void release(String key) {
+        String owner = owner();
+        String holdingKey = key + "#" + owner;
+        Holding holding = holdings.get(holdingKey);
+        long lease = holding == null ? watchdogTimeout : holding.leaseMillis;
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key),
+                owner, String.valueOf(lease), RedisConstants.LOCK_RELEASE_CHANNEL);
+        if(result != null && result == 0) {
+            //仍有重入未释放
+            return;
+        }
+        if(holding != null) {
+            holdings.remove(holdingKey);
+            if(holding.renewTask != null) {
+                holding.renewTask.cancel(false);
+            }
+            long held = System.nanoTime() - holding.acquiredAt;
+            released.increment();
+            holdNanos.add(held);
+            maxHoldNanos.accumulateAndGet(held, Math::max);
+        }
+        if(result == null || result < 0) {
+            //锁已过期或被其他线程持有,不抛出异常以免覆盖业务结果
+            lost.increment();
+            log.warn("释放锁{}时锁已不属于当前线程", key);
+        }
+    }
+
+    boolean isHeldByCurrentThread(String key) {
+        return holdings.containsKey(key + "#" + owner());
+    }
+
+    /**
+     * 记录持有的锁,第一次获取且需要续期时启动看门狗
+     */
+    private void onAcquired(String key, String owner, long leaseMillis, boolean renew) {
+        Holding holding = holdings.computeIfAbsent(key + "#" + owner, k -> new Holding(leaseMillis));
+        if(renew && holding.renewTask == null) {
+            holding.leaseMillis = leaseMillis;
+            long period = Math.max(leaseMillis / 3, 1);
+            holding.renewTask = watchdog.scheduleAtFixedRate(() -> renew(key, owner, holding), period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 看门狗续期
+     */
+    private void renew(String key, String owner, Holding holding) {
+        try {
+            Long ok = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key), owner, String.valueOf(holding.leaseMillis));
+            if(ok != null && ok == 1) {
+                renewals.increment();
+                return;
+            }
+            //锁已经不存在(过期或被删除),停止续期
+            log.warn("锁{}已丢失,停止续期", key);
+            lost.increment();
+            ScheduledFuture<?> task = holding.renewTask;
+            if(task != null) {
+                task.cancel(false);
+            }
+            holdings.remove(key + "#" + owner, holding);
+        } catch (Exception e) {
+            //Redis暂时不可用,下次继续续期
+            log.warn("锁{}续期失败", key, e);
+        }
+    }
+
+    /**
+     * 接收锁释放通知,按等待顺序唤醒本节点等待该锁的一个线程
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        Waiters waiting = waiters.get(key);
+        if(waiting != null && waiting.semaphore.availablePermits() == 0) {
+            waiting.semaphore.release();
+        }
+    }
+
+    /**
+     * 锁的指标:获取/超时次数、等待时间、持有时间、续期次数、当前持有和等待数量
+     * @return 指标数据
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long waitedCount = acquiredAfterWait.sum();
+        long releasedCount = released.sum();
+        metrics.put("acquired", acquired.sum());
+        metrics.put("acquiredAfterWait", waitedCount);
+        metrics.put("timeouts", timeouts.sum());
+        metrics.put("avgWaitMillis", waitedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / waitedCount));
+        metrics.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        metrics.put("released", releasedCount);
+        metrics.put("avgHoldMillis", releasedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(holdNanos.sum() / releasedCount));
+        metrics.put("maxHoldMillis", TimeUnit.NANOSECONDS.toMillis(maxHoldNanos.get()));
+        metrics.put("renewals", renewals.sum());
+        metrics.put("lost", lost.sum());
+        metrics.put("held", holdings.size());
+        metrics.put("waiting", waiters.values().stream().mapToInt(w -> w.count).sum());
+        return metrics;
+    }
+
+    private String owner() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 本节点某个线程对某个锁的持有记录(重入次数记录在Redis中)
+     */
+    private static final class Holding {
+        private final long acquiredAt = System.nanoTime();
+        private volatile long leaseMillis;
+        private volatile ScheduledFuture<?> renewTask;
+
+        private Holding(long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+        }
+    }
+
+    /**
+     * 本节点等待某个锁的线程(公平信号量,先等待的先被唤醒)
+     */
+    private static final class Waiters {
+        private final Semaphore semaphore = new Semaphore(0, true);
+        private int count;
+    }
+}
@@ -0,0 +1,61 @@
+package com.hmdp.utils.distributedLock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-04:40
+ * @Description: 基于Redis的可重入分布式锁(由 RedisLockFactory 创建)
+ * 1.锁用hash存储:field为 节点标识:线程id,value为重入次数,加锁/释放/续期都由Lua脚本保证原子性
+ * 2.不指定过期时间时由看门狗每 1/3 过期时间续期一次,直到最外层释放锁
+ * 3.获取锁失败时不休眠轮询:等待锁释放的发布订阅通知,最长等待锁的剩余时间(通知丢失时也能重试),同一节点的等待线程按先来先得被唤醒
+ */
+public class RedisReentrantLock implements ILock {
+
+    private final RedisLockFactory factory;
+    private final String key;
+
+    RedisReentrantLock(RedisLockFactory factory, String key) {
+        this.factory = factory;
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 尝试获取锁,不等待,不续期
+     * @param timeoutSec 过期时间
+     * @return
+     */
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        return factory.tryLockOnce(key, TimeUnit.SECONDS.toMillis(timeoutSec), false);
+    }
+
+    /**
+     * 尝试获取锁,不等待,由看门狗续期
+     * @return
+     */
+    public boolean tryLock() {
+        return factory.tryLockOnce(key, factory.getWatchdogTimeout(), true);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        return factory.acquire(key, unit.toMillis(waitTime), leaseTime < 0 ? -1 : unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 当前线程是否持有该锁(只判断本节点的记录,不访问Redis)
+     */
+    public boolean isHeldByCurrentThread() {
+        return factory.isHeldByCurrentThread(key);
+    }
+
+    @Override
+    public void unLock() {
+        factory.release(key);
+    }
+}
@@ -0,0 +1,77 @@
+package com.hmdp.utils.feed;
+
+import com.hmdp.mapper.FollowMapper;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-05:20
+ * @Description: feed流推拉结合
+ * 1.普通作者(粉丝数不超过阈值):发布博客时只写入推送任务队列 stream.feed.fanout,由 FeedFanoutWorker 按粉丝id分页,
+ *   每页一次pipeline写入粉丝收件箱 feed:{粉丝id},发布博客的请求耗时与粉丝数量无关
+ * 2.大V(粉丝数超过阈值):只写入作者发件箱 feed:outbox:{作者id},粉丝读取时从关注的大V发件箱拉取(见 FeedTimeline)
+ *   大V身份记录在 feed:celebrities 中且不会取消,避免之前写入发件箱的博客在粉丝的feed流中消失
+ * 3.收件箱、发件箱都只保留最新的N条
+ */
+@Slf4j
+@Component
+public class FeedFanout {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private FollowMapper followMapper;
+
+    //粉丝数超过该值的作者为大V
+    @Value("${hmdp.blog.feed.celebrity-threshold:10000}")
+    private int celebrityThreshold;
+    //发件箱保留的博客数量
+    @Value("${hmdp.blog.feed.outbox-size:1000}")
+    private int outboxSize;
+    /**
+     * 发布博客
+     * @param authorId 作者id
+     * @param blogId 博客id
+     * @param timestamp 发布时间(毫秒),作为收件箱/发件箱的score
+     */
+    public void publish(Long authorId, Long blogId, long timestamp) {
+        if(isCelebrity(authorId)) {
+            //1.大V:写入发件箱,由粉丝读取时拉取
+            String outbox = RedisConstants.FEED_OUTBOX_KEY + authorId;
+            stringRedisTemplate.opsForZSet().add(outbox, blogId.toString(), timestamp);
+            stringRedisTemplate.opsForZSet().removeRange(outbox, 0, -outboxSize - 1);
+            return;
+        }
+        //2.普通作者:写入推送任务队列,异步推送到粉丝收件箱
+        Map<String, String> task = new HashMap<>(4);
+        task.put("authorId", authorId.toString());
+        task.put("blogId", blogId.toString());
+        task.put("timestamp", String.valueOf(timestamp));
+        stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(task).withStreamKey(RedisConstants.FEED_FANOUT_STREAM_KEY));
+    }
+
+    /**
+     * 判断作者是否为大V,粉丝数第一次超过阈值时记录
+     */
+    private boolean isCelebrity(Long authorId) {
+        if(Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(RedisConstants.FEED_CELEBRITY_KEY, authorId.toString()))) {
+            return true;
+        }
+        //最多统计到阈值+1,粉丝很多时不扫描整个索引范围
+        if(followMapper.countFollowers(authorId, celebrityThreshold + 1) <= celebrityThreshold) {
+            return false;
+        }
+        log.info("用户{}粉丝数超过{},博客改为由粉丝拉取", authorId, celebrityThreshold);
+        stringRedisTemplate.opsForSet().add(RedisConstants.FEED_CELEBRITY_KEY, authorId.toString());
+        return true;
+    }
+}
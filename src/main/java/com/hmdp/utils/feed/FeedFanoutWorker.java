@@ -0,0 +1,391 @@
+package com.hmdp.utils.feed;
+
+import com.hmdp.mapper.FollowMapper;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-05:55
+ * @Description: feed流推送工作线程池
+ * 1.每个节点启动一组工作线程,消费推送任务队列 stream.feed.fanout(消费者名称 = 进程号@主机名-线程序号)
+ * 2.每个任务按粉丝id范围分页查询 tb_follow(WHERE follow_user_id = ? AND user_id > ? LIMIT N),不一次加载全部粉丝;
+ *   每页一次pipeline写入粉丝收件箱,同一pipeline中记录检查点 feed:fanout:checkpoint(任务id -> 已推送到的粉丝id)
+ * 3.节点宕机或推送失败后,任务留在pending list中,重新处理(或被其他节点认领)时从检查点继续推送;
+ *   失败的任务按投递次数指数退避后重试(XCLAIM重新投递,投递次数由Redis记录),达到上限后转入死信队列 stream.feed.fanout.dlq,
+ *   不会反复重试同一个无法完成的任务
+ * 4.任务完成后确认并删除消息,队列长度即为积压的任务数量;定时采集推送速度、积压数量等指标
+ */
+@Slf4j
+@Component
+public class FeedFanoutWorker {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private FollowMapper followMapper;
+
+    //工作线程数
+    @Value("${hmdp.blog.feed.fanout-workers:4}")
+    private int workers;
+    //每页查询的粉丝数量(一次pipeline写入)
+    @Value("${hmdp.blog.feed.fanout-batch-size:2000}")
+    private int batchSize;
+    //收件箱保留的博客数量
+    @Value("${hmdp.blog.feed.inbox-size:1000}")
+    private int inboxSize;
+    //推送任务队列为空时阻塞等待的时间(毫秒)
+    @Value("${hmdp.blog.feed.block-millis:2000}")
+    private long blockMillis;
+    //其他消费者的任务空闲超过该时间后认领(毫秒)
+    @Value("${hmdp.blog.feed.claim-idle-millis:60000}")
+    private long claimIdleMillis;
+    //最大投递次数,达到后转入死信队列
+    @Value("${hmdp.blog.feed.max-deliveries:5}")
+    private int maxDeliveries;
+    //第一次重试的退避时间(毫秒),之后每次翻倍
+    @Value("${hmdp.blog.feed.retry-backoff-millis:1000}")
+    private long retryBackoffMillis;
+    //退避时间上限(毫秒)
+    @Value("${hmdp.blog.feed.retry-backoff-max-millis:60000}")
+    private long retryBackoffMaxMillis;
+
+    private ExecutorService executor;
+    private volatile boolean running = true;
+
+    //指标
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder chunkNanos = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private volatile long lastSampleAt = System.currentTimeMillis();
+    private volatile long lastDelivered;
+    private volatile double deliveredPerSecond;
+    private volatile long backlog;
+    private volatile long pending;
+
+    @PostConstruct
+    private void init() {
+        createGroup();
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> new Thread(r, "feed-fanout-" + index.getAndIncrement()));
+        for (int i = 0; i < workers; i++) {
+            executor.submit(new Worker(node + "-" + i));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    private void createGroup() {
+        byte[] key = RedisConstants.FEED_FANOUT_STREAM_KEY.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(key, RedisConstants.FEED_FANOUT_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            //BUSYGROUP:消费者组已存在
+            log.debug("消费者组已存在:{}", RedisConstants.FEED_FANOUT_STREAM_KEY);
+        }
+    }
+
+    /**
+     * 采集推送速度和积压数量
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.feed.metrics-interval:10000}")
+    public void sample() {
+        long now = System.currentTimeMillis();
+        long total = delivered.sum();
+        deliveredPerSecond = (total - lastDelivered) * 1000.0 / Math.max(now - lastSampleAt, 1);
+        lastDelivered = total;
+        lastSampleAt = now;
+        try {
+            Long size = stringRedisTemplate.opsForStream().size(RedisConstants.FEED_FANOUT_STREAM_KEY);
+            backlog = size == null ? 0 : size;
+            PendingMessagesSummary summary = stringRedisTemplate.opsForStream()
+                    .pending(RedisConstants.FEED_FANOUT_STREAM_KEY, RedisConstants.FEED_FANOUT_GROUP);
+            pending = summary == null ? 0 : summary.getTotalPendingMessages();
+        } catch (Exception e) {
+            log.warn("采集推送任务队列指标失败", e);
+        }
+    }
+
+    /**
+     * 推送指标:完成/失败的任务数量、写入收件箱的数量和速度、每页耗时、积压的任务数量
+     * @return 指标数据
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long chunkCount = chunks.sum();
+        metrics.put("tasks", tasks.sum());
+        metrics.put("failures", failures.sum());
+        metrics.put("claimed", claimed.sum());
+        metrics.put("retried", retried.sum());
+        metrics.put("deadLettered", deadLettered.sum());
+        metrics.put("delivered", delivered.sum());
+        metrics.put("deliveredPerSecond", Math.round(deliveredPerSecond));
+        metrics.put("chunks", chunkCount);
+        metrics.put("avgChunkMillis", chunkCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(chunkNanos.sum() / chunkCount));
+        metrics.put("backlog", backlog);
+        metrics.put("pending", pending);
+        return metrics;
+    }
+
+    /**
+     * 第n次投递失败后的退避时间:base * 2^(n-1),不超过上限
+     */
+    private long backoff(long deliveries) {
+        long shift = Math.min(Math.max(deliveries - 1, 0), 30);
+        return Math.min(retryBackoffMillis << shift, retryBackoffMaxMillis);
+    }
+
+    /**
+     * 工作线程:定期认领其他消费者超时的任务、重试自己pending list中到达退避时间的任务,其余时间读取新任务
+     */
+    private class Worker implements Runnable {
+
+        private final String name;
+        private long nextClaim = System.currentTimeMillis();
+        private long nextRecovery = System.currentTimeMillis();
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    //1.认领其他消费者超时的任务(认领后在自己的pending list中)
+                    if(System.currentTimeMillis() >= nextClaim) {
+                        claim();
+                        nextClaim = System.currentTimeMillis() + claimIdleMillis;
+                    }
+                    //2.重试自己pending list中的任务
+                    if(System.currentTimeMillis() >= nextRecovery) {
+                        if(!recover()) {
+                            return;
+                        }
+                        nextRecovery = System.currentTimeMillis() + retryBackoffMillis;
+                    }
+                    //3.读取新任务
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(RedisConstants.FEED_FANOUT_GROUP, name),
+                            StreamReadOptions.empty().count(1).block(Duration.ofMillis(blockMillis)),
+                            StreamOffset.create(RedisConstants.FEED_FANOUT_STREAM_KEY, ReadOffset.lastConsumed())
+                    );
+                    if(list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    for (MapRecord<String, Object, Object> record : list) {
+                        if(!handle(record)) {
+                            //停机,未完成的任务留在pending list中,从检查点继续
+                            return;
+                        }
+                    }
+                } catch (Exception e) {
+                    //任务留在pending list中,退避后从检查点重试;稍等片刻,避免Redis不可用时空转
+                    failures.increment();
+                    log.warn("{}推送博客到粉丝收件箱异常,稍后重试", name, e);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(retryBackoffMillis);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 重试pending list中到达退避时间的任务,投递次数达到上限的任务转入死信队列
+         * @return 停机时返回false
+         */
+        private boolean recover() {
+            PendingMessages messages = stringRedisTemplate.opsForStream().pending(RedisConstants.FEED_FANOUT_STREAM_KEY,
+                    Consumer.from(RedisConstants.FEED_FANOUT_GROUP, name), Range.unbounded(), 100);
+            for (PendingMessage message : messages) {
+                long deliveries = message.getTotalDeliveryCount();
+                if(deliveries >= maxDeliveries) {
+                    deadLetter(message);
+                    continue;
+                }
+                if(message.getElapsedTimeSinceLastDelivery().toMillis() < backoff(deliveries)) {
+                    continue;
+                }
+                //重新投递给自己(XCLAIM会增加投递次数并重置空闲时间),失败的任务等待下一次退避
+                MapRecord<String, String, String> record = redeliver(message.getId());
+                if(record == null) {
+                    continue;
+                }
+                retried.increment();
+                try {
+                    if(!handle(record)) {
+                        return false;
+                    }
+                } catch (Exception e) {
+                    failures.increment();
+                    log.warn("{}重试推送任务{}失败,已投递{}次", name, message.getIdAsString(), deliveries + 1, e);
+                }
+            }
+            return true;
+        }
+
+        private MapRecord<String, String, String> redeliver(RecordId id) {
+            byte[] key = RedisConstants.FEED_FANOUT_STREAM_KEY.getBytes(StandardCharsets.UTF_8);
+            List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xClaim(key, RedisConstants.FEED_FANOUT_GROUP, name,
+                            RedisStreamCommands.XClaimOptions.minIdle(Duration.ZERO).ids(id)));
+            if(records == null || records.isEmpty()) {
+                return null;
+            }
+            return records.get(0).deserialize(RedisSerializer.string());
+        }
+
+        /**
+         * 任务转入死信队列 stream.feed.fanout.dlq(带上检查点),确认并删除任务
+         */
+        private void deadLetter(PendingMessage message) {
+            String taskId = message.getIdAsString();
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(RedisConstants.FEED_FANOUT_STREAM_KEY, Range.just(taskId));
+            if(records != null && !records.isEmpty()) {
+                Map<String, String> value = new HashMap<>();
+                records.get(0).getValue().forEach((k, v) -> value.put(k.toString(), v.toString()));
+                value.put("recordId", taskId);
+                value.put("deliveries", String.valueOf(message.getTotalDeliveryCount()));
+                Object checkpoint = stringRedisTemplate.opsForHash().get(RedisConstants.FEED_FANOUT_CHECKPOINT_KEY, taskId);
+                if(checkpoint != null) {
+                    value.put("checkpoint", checkpoint.toString());
+                }
+                stringRedisTemplate.opsForStream().add(RedisConstants.FEED_FANOUT_DLQ_KEY, value);
+            }
+            stringRedisTemplate.opsForStream().acknowledge(RedisConstants.FEED_FANOUT_STREAM_KEY,
+                    RedisConstants.FEED_FANOUT_GROUP, message.getId());
+            stringRedisTemplate.opsForStream().delete(RedisConstants.FEED_FANOUT_STREAM_KEY, message.getId());
+            stringRedisTemplate.opsForHash().delete(RedisConstants.FEED_FANOUT_CHECKPOINT_KEY, taskId);
+            deadLettered.increment();
+            log.error("推送任务{}投递{}次仍未完成,已转入死信队列", taskId, message.getTotalDeliveryCount());
+        }
+
+        /**
+         * 认领其他消费者空闲超时的任务(节点宕机后遗留的任务)
+         */
+        private void claim() {
+            PendingMessages messages = stringRedisTemplate.opsForStream().pending(RedisConstants.FEED_FANOUT_STREAM_KEY,
+                    RedisConstants.FEED_FANOUT_GROUP, Range.unbounded(), 100);
+            List<RecordId> ids = new ArrayList<>();
+            for (PendingMessage message : messages) {
+                if(!name.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                    ids.add(message.getId());
+                }
+            }
+            if(ids.isEmpty()) {
+                return;
+            }
+            byte[] key = RedisConstants.FEED_FANOUT_STREAM_KEY.getBytes(StandardCharsets.UTF_8);
+            List<RecordId> moved = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                    connection.streamCommands().xClaimJustId(key, RedisConstants.FEED_FANOUT_GROUP, name,
+                            RedisStreamCommands.XClaimOptions.minIdle(Duration.ofMillis(claimIdleMillis)).ids(ids.toArray(new RecordId[0]))));
+            if(moved != null && !moved.isEmpty()) {
+                claimed.add(moved.size());
+                log.info("{}认领了{}个未完成的推送任务", name, moved.size());
+            }
+        }
+
+        /**
+         * 从检查点开始按粉丝id分页推送,完成后确认并删除任务
+         * @return 是否推送完成
+         */
+        private boolean handle(MapRecord<String, ?, ?> record) {
+            Map<?, ?> task = record.getValue();
+            Long authorId = Long.valueOf(task.get("authorId").toString());
+            byte[] member = task.get("blogId").toString().getBytes(StandardCharsets.UTF_8);
+            double score = Double.parseDouble(task.get("timestamp").toString());
+            String taskId = record.getId().getValue();
+            byte[] checkpointKey = RedisConstants.FEED_FANOUT_CHECKPOINT_KEY.getBytes(StandardCharsets.UTF_8);
+            byte[] checkpointField = taskId.getBytes(StandardCharsets.UTF_8);
+            //1.从检查点继续
+            Object checkpoint = stringRedisTemplate.opsForHash().get(RedisConstants.FEED_FANOUT_CHECKPOINT_KEY, taskId);
+            long afterUserId = checkpoint == null ? 0 : Long.parseLong(checkpoint.toString());
+            while (true) {
+                if(!running) {
+                    return false;
+                }
+                long begin = System.nanoTime();
+                List<Long> followers = followMapper.listFollowerIds(authorId, afterUserId, batchSize);
+                if(followers.isEmpty()) {
+                    break;
+                }
+                long last = followers.get(followers.size() - 1);
+                //2.一次pipeline:写入这一页粉丝的收件箱,并记录检查点
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Long followerId : followers) {
+                        byte[] inbox = (RedisConstants.FEED_KEY + followerId).getBytes(StandardCharsets.UTF_8);
+                        connection.zAdd(inbox, score, member);
+                        connection.zRemRange(inbox, 0, -inboxSize - 1);
+                    }
+                    connection.hSet(checkpointKey, checkpointField, String.valueOf(last).getBytes(StandardCharsets.UTF_8));
+                    return null;
+                });
+                delivered.add(followers.size());
+                chunks.increment();
+                chunkNanos.add(System.nanoTime() - begin);
+                if(followers.size() < batchSize) {
+                    break;
+                }
+                afterUserId = last;
+            }
+            //3.确认并删除任务,删除检查点
+            stringRedisTemplate.opsForStream().acknowledge(RedisConstants.FEED_FANOUT_STREAM_KEY,
+                    RedisConstants.FEED_FANOUT_GROUP, record.getId());
+            stringRedisTemplate.opsForStream().delete(RedisConstants.FEED_FANOUT_STREAM_KEY, record.getId());
+            stringRedisTemplate.opsForHash().delete(RedisConstants.FEED_FANOUT_CHECKPOINT_KEY, taskId);
+            tasks.increment();
+            return true;
+        }
+    }
+}
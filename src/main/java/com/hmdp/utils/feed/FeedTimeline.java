@@ -0,0 +1,146 @@
+package com.hmdp.utils.feed;
+
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-05:35
+ * @Description: feed流读取(推拉结合)
+ * 1.数据来源:当前用户的收件箱 feed:{userId} + 关注的大V的发件箱 feed:outbox:{作者id}
+ *   (关注的大V = 关注列表 follows:{userId} 中属于大V集合的用户;两个key位于不同的slot,不使用SINTER,
+ *   大V集合在本地保留快照并定期刷新,大V身份不会取消,快照只会滞后不会出错)
+ * 2.一次pipeline从每个来源取 score <= max 的前 offset+count 条,按时间倒序多路归并后跳过offset条
+ */
+@Slf4j
+@Component
+public class FeedTimeline {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    //大V集合 feed:celebrities 的本地快照,首次查询时加载
+    private volatile Set<String> celebrities;
+
+    /**
+     * 滚动分页查询
+     * @param userId 当前用户id
+     * @param max 上一页最小的时间戳(第一页为当前时间)
+     * @param offset 与上一页最小时间戳相同的元素个数
+     * @param count 每页数量
+     * @return 博客id和时间戳,按时间倒序
+     */
+    public List<ZSetOperations.TypedTuple<String>> page(Long userId, long max, int offset, int count) {
+        //1.收件箱 + 关注的大V的发件箱
+        List<String> sources = new ArrayList<>();
+        sources.add(RedisConstants.FEED_KEY + userId);
+        Set<String> snapshot = celebrities();
+        if(!snapshot.isEmpty()) {
+            //读取关注列表,在本地过滤出大V
+            Set<String> follows = stringRedisTemplate.opsForSet().members(RedisConstants.USER_FOLLOW_KEY + userId);
+            if(follows != null) {
+                follows.stream().filter(snapshot::contains)
+                        .forEach(authorId -> sources.add(RedisConstants.FEED_OUTBOX_KEY + authorId));
+            }
+        }
+        int limit = offset + count;
+        //2.只有收件箱时直接分页
+        if(sources.size() == 1) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(sources.get(0), 0, max, offset, count);
+            return tuples == null ? new ArrayList<>() : new ArrayList<>(tuples);
+        }
+        //3.一次pipeline查询所有来源
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String source : sources) {
+                connection.zRevRangeByScoreWithScores(source.getBytes(StandardCharsets.UTF_8), 0, max, 0, limit);
+            }
+            return null;
+        });
+        return merge(results, offset, count);
+    }
+
+    /**
+     * 定期从Redis刷新大V集合的本地快照(新晋大V在刷新之前不会被拉取)
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.feed.celebrity-refresh-millis:10000}")
+    public void refreshCelebrities() {
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(RedisConstants.FEED_CELEBRITY_KEY);
+            celebrities = members == null ? Collections.emptySet() : members;
+        } catch (Exception e) {
+            //Redis暂时不可用,继续使用旧的快照
+            log.warn("刷新大V集合失败", e);
+        }
+    }
+
+    private Set<String> celebrities() {
+        Set<String> snapshot = celebrities;
+        if(snapshot == null) {
+            refreshCelebrities();
+            snapshot = celebrities;
+        }
+        return snapshot == null ? Collections.emptySet() : snapshot;
+    }
+
+    /**
+     * 多路归并:每个来源已按时间倒序,每次取所有来源中时间最大的一条
+     */
+    @SuppressWarnings("unchecked")
+    private List<ZSetOperations.TypedTuple<String>> merge(List<Object> results, int offset, int count) {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Comparator.comparingDouble((Cursor c) -> c.head.getScore()).reversed());
+        for (Object result : results) {
+            if(result instanceof Collection && !((Collection<?>) result).isEmpty()) {
+                Iterator<ZSetOperations.TypedTuple<String>> it = ((Collection<ZSetOperations.TypedTuple<String>>) result).iterator();
+                heap.add(new Cursor(it.next(), it));
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>();
+        int skipped = 0;
+        while (!heap.isEmpty() && page.size() < count) {
+            Cursor cursor = heap.poll();
+            ZSetOperations.TypedTuple<String> tuple = cursor.head;
+            if(cursor.rest.hasNext()) {
+                cursor.head = cursor.rest.next();
+                heap.add(cursor);
+            }
+            if(!seen.add(tuple.getValue())) {
+                continue;
+            }
+            if(skipped < offset) {
+                skipped++;
+                continue;
+            }
+            page.add(tuple);
+        }
+        return page;
+    }
+
+    private static final class Cursor {
+        private ZSetOperations.TypedTuple<String> head;
+        private final Iterator<ZSetOperations.TypedTuple<String>> rest;
+
+        private Cursor(ZSetOperations.TypedTuple<String> head, Iterator<ZSetOperations.TypedTuple<String>> rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+    }
+}
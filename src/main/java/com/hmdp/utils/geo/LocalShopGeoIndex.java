@@ -0,0 +1,246 @@
+package com.hmdp.utils.geo;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-07:30
+ * @Description: 进程内商铺GEO索引(可选,hmdp.shop.geo.local.enabled)
+ * 1.每种商铺类型一个网格索引 ShopGrid,附近商铺查询完全在进程内完成,不访问Redis
+ * 2.启动时在后台线程按id分页读取 tb_shop 的 id/type_id/x/y 构建,构建完成前查询仍走Redis GEO(见 isReady)
+ * 3.新增/更新商铺的事务提交后 ShopGeoIndex 在 shop:geo:changed 频道广播新旧类型和坐标,各节点删除旧位置、写入新位置;
+ *   构建期间收到的变更同时暂存,构建完成后在新索引上按顺序重放,避免构建读到旧坐标后覆盖变更
+ * 4.Redis发布订阅不保证送达(断线期间的变更会丢失),定期在后台重新构建一份完整索引后替换(构建期间内存中同时有新旧两份索引)
+ */
+@Slf4j
+@Component
+public class LocalShopGeoIndex implements MessageListener {
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    //是否启用进程内索引
+    @Value("${hmdp.shop.geo.local.enabled:false}")
+    private boolean enabled;
+    //网格边长(度)
+    @Value("${hmdp.shop.geo.local.cell-degrees:0.01}")
+    private double cellDegrees;
+    //附近商铺的查询半径(米),与Redis GEO查询相同
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double radiusMeters;
+    //加载时每页读取的商铺数量
+    @Value("${hmdp.shop.geo.load-batch-size:1000}")
+    private int loadBatchSize;
+
+    //商铺类型 -> 网格索引(重新构建完成后整体替换)
+    private volatile Map<Long, ShopGrid> grids = new ConcurrentHashMap<>();
+    //构建期间收到的变更
+    private final List<String> pending = new ArrayList<>();
+    //是否正在构建(由pending加锁保护)
+    private boolean loading;
+    private volatile boolean ready;
+    private ExecutorService loader;
+
+    @PostConstruct
+    private void init() {
+        if(!enabled) {
+            return;
+        }
+        //先订阅再加载,加载期间的变更不会丢失
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SHOP_GEO_CHANGE_CHANNEL));
+        loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "shop-grid-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loader.submit(this::load);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if(loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * 定期重新构建,修复丢失的变更消息(在加载线程中执行,不占用定时任务线程)
+     */
+    @Scheduled(initialDelayString = "${hmdp.shop.geo.local.rebuild-interval:600000}",
+            fixedDelayString = "${hmdp.shop.geo.local.rebuild-interval:600000}")
+    public void rebuild() {
+        if(enabled && ready) {
+            loader.submit(this::load);
+        }
+    }
+
+    /**
+     * 是否可以查询(已启用且加载完成)
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询附近的商铺,按距离升序
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param from 跳过的数量
+     * @param end 查询到第end条(不包含)
+     * @return 商铺id和距离
+     */
+    public List<NearbyShop> search(Long typeId, double x, double y, int from, int end) {
+        ShopGrid grid = grids.get(typeId);
+        if(grid == null) {
+            return Collections.emptyList();
+        }
+        List<NearbyShop> nearby = grid.search(x, y, radiusMeters, end);
+        return nearby.size() <= from ? Collections.emptyList() : nearby.subList(from, nearby.size());
+    }
+
+    /**
+     * 索引中的商铺数量
+     */
+    public long size() {
+        long size = 0;
+        for (ShopGrid grid : grids.values()) {
+            size += grid.size();
+        }
+        return size;
+    }
+
+    private void load() {
+        synchronized (pending) {
+            if(loading) {
+                return;
+            }
+            loading = true;
+            pending.clear();
+        }
+        long begin = System.currentTimeMillis();
+        long total = 0;
+        long afterId = 0;
+        Map<Long, ShopGrid> fresh = new ConcurrentHashMap<>();
+        try {
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", afterId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + loadBatchSize));
+                if(shops.isEmpty()) {
+                    break;
+                }
+                addAll(fresh, shops);
+                total += shops.size();
+                afterId = shops.get(shops.size() - 1).getId();
+                if(shops.size() < loadBatchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            //加载失败时保留原来的索引(首次加载失败则保持未就绪,查询继续走Redis GEO)
+            log.error("加载进程内商铺GEO索引失败,{}", ready ? "继续使用原来的索引" : "附近商铺查询继续使用Redis", e);
+            synchronized (pending) {
+                pending.clear();
+                loading = false;
+            }
+            return;
+        }
+        //在新索引上重放构建期间的变更后替换,切换为就绪
+        synchronized (pending) {
+            pending.forEach(change -> apply(fresh, change));
+            pending.clear();
+            grids = fresh;
+            loading = false;
+            ready = true;
+        }
+        log.info("加载进程内商铺GEO索引完成,商铺数量:{},耗时:{}ms", total, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 一页商铺按类型分组后批量写入
+     */
+    private void addAll(Map<Long, ShopGrid> grids, List<Shop> shops) {
+        Map<Long, List<Shop>> byType = new HashMap<>();
+        for (Shop shop : shops) {
+            if(shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                byType.computeIfAbsent(shop.getTypeId(), k -> new ArrayList<>()).add(shop);
+            }
+        }
+        byType.forEach((typeId, list) -> {
+            long[] ids = new long[list.size()];
+            double[] xs = new double[list.size()];
+            double[] ys = new double[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                ids[i] = list.get(i).getId();
+                xs[i] = list.get(i).getX();
+                ys[i] = list.get(i).getY();
+            }
+            grid(grids, typeId).addAll(ids, xs, ys, ids.length);
+        });
+    }
+
+    /**
+     * 接收商铺坐标变更:id,typeId,x,y,旧typeId,旧x,旧y
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String change = new String(message.getBody(), StandardCharsets.UTF_8);
+        //加锁:变更不会写入正在被替换掉的旧索引
+        synchronized (pending) {
+            if(loading) {
+                pending.add(change);
+            }
+            apply(grids, change);
+        }
+    }
+
+    private void apply(Map<Long, ShopGrid> grids, String change) {
+        try {
+            String[] f = change.split(",", -1);
+            long id = Long.parseLong(f[0]);
+            //1.从旧位置删除
+            if(!f[4].isEmpty() && !f[5].isEmpty() && !f[6].isEmpty()) {
+                grid(grids, Long.parseLong(f[4])).remove(id, Double.parseDouble(f[5]), Double.parseDouble(f[6]));
+            }
+            //2.写入新位置
+            if(!f[1].isEmpty() && !f[2].isEmpty() && !f[3].isEmpty()) {
+                grid(grids, Long.parseLong(f[1])).add(id, Double.parseDouble(f[2]), Double.parseDouble(f[3]));
+            }
+        } catch (RuntimeException e) {
+            log.error("商铺坐标变更消息格式错误:{}", change, e);
+        }
+    }
+
+    private ShopGrid grid(Map<Long, ShopGrid> grids, Long typeId) {
+        return grids.computeIfAbsent(typeId, k -> new ShopGrid(cellDegrees));
+    }
+}
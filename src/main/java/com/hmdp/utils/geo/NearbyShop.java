@@ -0,0 +1,25 @@
+package com.hmdp.utils.geo;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-06:40
+ * @Description: 附近商铺查询结果:商铺id和距离(米)
+ */
+public final class NearbyShop {
+
+    private final long shopId;
+    private final double distance;
+
+    public NearbyShop(long shopId, double distance) {
+        this.shopId = shopId;
+        this.distance = distance;
+    }
+
+    public long getShopId() {
+        return shopId;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+}
@@ -0,0 +1,197 @@
+package com.hmdp.utils.geo;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-06:45
+ * @Description: 商铺GEO索引(Redis)
+ * 1.每种商铺类型一个GEO集合 shop:geo:{typeId},member为商铺id
+ * 2.全量加载:按id分页读取 tb_shop 的 id/type_id/x/y,每页一次pipeline GEOADD;启动时若未加载过,由获取到加载锁的节点执行
+ * 3.增量维护:新增商铺时GEOADD,更新商铺时按更新后的类型和坐标重新GEOADD,类型改变时从原类型的集合中删除;
+ *   同时在 shop:geo:changed 频道广播新旧类型和坐标,供各节点的进程内网格索引同步(见 LocalShopGeoIndex);
+ *   在事务中调用时等事务提交后再写入和广播,事务回滚时索引不会出现数据库中不存在的坐标
+ * 4.附近商铺查询:GEORADIUS key x y radius m WITHDIST ASC COUNT end,跳过前from条实现分页
+ *   (spring-data-redis 2.3 没有封装Redis 6.2的GEOSEARCH,GEORADIUS ... ASC COUNT 的查询方式与其 BYRADIUS ASC COUNT 相同)
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex {
+
+    private static final String LOAD_LOCK = "shop:geo:load";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+
+    //附近商铺的查询半径(米)
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double radiusMeters;
+    //启动时是否加载GEO索引(已加载过时跳过)
+    @Value("${hmdp.shop.geo.load-on-startup:true}")
+    private boolean loadOnStartup;
+    //全量加载时每页读取的商铺数量
+    @Value("${hmdp.shop.geo.load-batch-size:1000}")
+    private int loadBatchSize;
+
+    @PostConstruct
+    private void init() {
+        if(!loadOnStartup || Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConstants.SHOP_GEO_LOADED_KEY))) {
+            return;
+        }
+        //多个节点同时启动时只由一个节点加载
+        RedisReentrantLock lock = redisLockFactory.getLock(LOAD_LOCK);
+        if(!lock.tryLock()) {
+            return;
+        }
+        try {
+            if(!Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConstants.SHOP_GEO_LOADED_KEY))) {
+                loadAll();
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 全量加载:按id分页读取商铺坐标,每页一次pipeline写入
+     * @return 加载的商铺数量
+     */
+    public long loadAll() {
+        long begin = System.currentTimeMillis();
+        long total = 0;
+        long afterId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", afterId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + loadBatchSize));
+            if(shops.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Shop shop : shops) {
+                    if(shop.getX() != null && shop.getY() != null) {
+                        connection.geoAdd(geoKey(shop.getTypeId()), new Point(shop.getX(), shop.getY()), member(shop.getId()));
+                    }
+                }
+                return null;
+            });
+            total += shops.size();
+            afterId = shops.get(shops.size() - 1).getId();
+            if(shops.size() < loadBatchSize) {
+                break;
+            }
+        }
+        stringRedisTemplate.opsForValue().set(RedisConstants.SHOP_GEO_LOADED_KEY, String.valueOf(System.currentTimeMillis()));
+        log.info("加载商铺GEO索引完成,商铺数量:{},耗时:{}ms", total, System.currentTimeMillis() - begin);
+        return total;
+    }
+
+    /**
+     * 新增/更新商铺坐标(有事务时在事务提交后执行)
+     * @param shop 商铺(需要id、typeId、x、y)
+     * @param old 更新前的商铺(需要typeId、x、y),新增时为空
+     */
+    public void save(Shop shop, Shop old) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    //数据库已提交,写入索引失败不影响请求结果(进程内索引会定期重新构建)
+                    try {
+                        doSave(shop, old);
+                    } catch (Exception e) {
+                        log.error("更新商铺{}的GEO索引失败", shop.getId(), e);
+                    }
+                }
+            });
+            return;
+        }
+        doSave(shop, old);
+    }
+
+    private void doSave(Shop shop, Shop old) {
+        //1.更新Redis GEO索引
+        Long oldTypeId = old == null ? null : old.getTypeId();
+        if(oldTypeId != null && !Objects.equals(oldTypeId, shop.getTypeId())) {
+            stringRedisTemplate.opsForGeo().remove(RedisConstants.SHOP_GEO_KEY + oldTypeId, shop.getId().toString());
+        }
+        if(shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+            stringRedisTemplate.opsForGeo().add(RedisConstants.SHOP_GEO_KEY + shop.getTypeId(),
+                    new Point(shop.getX(), shop.getY()), shop.getId().toString());
+        }
+        //2.广播变更:id,typeId,x,y,旧typeId,旧x,旧y(新增时旧值为空)
+        String change = Stream.of(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY(),
+                        oldTypeId, old == null ? null : old.getX(), old == null ? null : old.getY())
+                .map(v -> v == null ? "" : v.toString())
+                .collect(Collectors.joining(","));
+        stringRedisTemplate.convertAndSend(RedisConstants.SHOP_GEO_CHANGE_CHANNEL, change);
+    }
+
+    /**
+     * 查询附近的商铺,按距离升序
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param from 跳过的数量
+     * @param end 查询到第end条(不包含)
+     * @return 商铺id和距离
+     */
+    public List<NearbyShop> search(Long typeId, double x, double y, int from, int end) {
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                RedisConstants.SHOP_GEO_KEY + typeId,
+                new Circle(new Point(x, y), new Distance(radiusMeters, RedisGeoCommands.DistanceUnit.METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end));
+        if(results == null || results.getContent().size() <= from) {
+            return Collections.emptyList();
+        }
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = results.getContent();
+        List<NearbyShop> nearby = new ArrayList<>(content.size() - from);
+        for (int i = from; i < content.size(); i++) {
+            GeoResult<RedisGeoCommands.GeoLocation<String>> result = content.get(i);
+            nearby.add(new NearbyShop(Long.parseLong(result.getContent().getName()), result.getDistance().getValue()));
+        }
+        return nearby;
+    }
+
+    private static byte[] geoKey(Long typeId) {
+        return (RedisConstants.SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] member(Long shopId) {
+        return shopId.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,228 @@
+package com.hmdp.utils.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-07:10
+ * @Description: 进程内商铺网格索引(一种商铺类型一个)
+ * 1.按经纬度把平面划分为 cellDegrees x cellDegrees 的网格,每个格子保存格子内商铺的id和坐标(基本类型数组,每个商铺24字节)
+ * 2.格子内的数组只读,新增/删除时复制一份新数组替换,查询不加锁
+ * 3.附近查询:从中心格子开始一圈一圈向外扫描,跳过不可能有更近商铺的格子,已找到足够的商铺且更外圈的格子不可能更近时停止;
+ *   距离使用与Redis GEO相同的半正矢公式和地球半径,结果与GEORADIUS一致
+ */
+public class ShopGrid {
+
+    //与Redis GEO相同的地球半径(米)
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private final double cellDegrees;
+    private final ConcurrentHashMap<Long, Cell> cells = new ConcurrentHashMap<>();
+
+    public ShopGrid(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * 格子内的商铺(只读)
+     */
+    private static final class Cell {
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+
+        private Cell(long[] ids, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+        }
+    }
+
+    public void add(long id, double x, double y) {
+        addAll(new long[]{id}, new double[]{x}, new double[]{y}, 1);
+    }
+
+    /**
+     * 批量新增(全量加载时按格子分组,每个格子只复制一次数组);已存在的id更新坐标
+     */
+    public void addAll(long[] ids, double[] xs, double[] ys, int n) {
+        Map<Long, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(cellKey(xs[i], ys[i]), k -> new ArrayList<>()).add(i);
+        }
+        groups.forEach((key, indexes) -> cells.compute(key, (k, cell) -> {
+            int size = cell == null ? 0 : cell.ids.length;
+            long[] newIds = cell == null ? new long[indexes.size()] : Arrays.copyOf(cell.ids, size + indexes.size());
+            double[] newXs = cell == null ? new double[indexes.size()] : Arrays.copyOf(cell.xs, size + indexes.size());
+            double[] newYs = cell == null ? new double[indexes.size()] : Arrays.copyOf(cell.ys, size + indexes.size());
+            int length = size;
+            for (int i : indexes) {
+                //同一格子内已存在(重复的变更事件或加载与变更交错)时覆盖坐标
+                int existing = indexOf(newIds, length, ids[i]);
+                int at = existing >= 0 ? existing : length++;
+                newIds[at] = ids[i];
+                newXs[at] = xs[i];
+                newYs[at] = ys[i];
+            }
+            return length == newIds.length ? new Cell(newIds, newXs, newYs)
+                    : new Cell(Arrays.copyOf(newIds, length), Arrays.copyOf(newXs, length), Arrays.copyOf(newYs, length));
+        }));
+    }
+
+    /**
+     * 删除商铺
+     * @param x 商铺原来的经度
+     * @param y 商铺原来的纬度
+     */
+    public void remove(long id, double x, double y) {
+        cells.computeIfPresent(cellKey(x, y), (k, cell) -> {
+            int index = indexOf(cell.ids, cell.ids.length, id);
+            if(index < 0) {
+                return cell;
+            }
+            int last = cell.ids.length - 1;
+            if(last == 0) {
+                return null;
+            }
+            long[] ids = Arrays.copyOf(cell.ids, last);
+            double[] xs = Arrays.copyOf(cell.xs, last);
+            double[] ys = Arrays.copyOf(cell.ys, last);
+            if(index < last) {
+                ids[index] = cell.ids[last];
+                xs[index] = cell.xs[last];
+                ys[index] = cell.ys[last];
+            }
+            return new Cell(ids, xs, ys);
+        });
+    }
+
+    /**
+     * 商铺数量
+     */
+    public long size() {
+        long size = 0;
+        for (Cell cell : cells.values()) {
+            size += cell.ids.length;
+        }
+        return size;
+    }
+
+    /**
+     * 查询半径内最近的limit个商铺,按距离升序
+     * @param x 经度
+     * @param y 纬度
+     * @param radiusMeters 半径(米)
+     * @param limit 数量
+     * @return 商铺id和距离
+     */
+    public List<NearbyShop> search(double x, double y, double radiusMeters, int limit) {
+        if(limit <= 0) {
+            return Collections.emptyList();
+        }
+        //大顶堆,保存当前最近的limit个商铺
+        PriorityQueue<NearbyShop> heap = new PriorityQueue<>(limit + 1,
+                Comparator.comparingDouble(NearbyShop::getDistance).reversed());
+        int cx = (int) Math.floor(x / cellDegrees);
+        int cy = (int) Math.floor(y / cellDegrees);
+        for (int ring = 0; ; ring++) {
+            //1.扫描第ring圈的格子
+            for (int dy = -ring; dy <= ring; dy++) {
+                boolean edge = dy == -ring || dy == ring;
+                for (int dx = -ring; dx <= ring; dx += edge ? 1 : 2 * ring) {
+                    Cell cell = cells.get(key(cx + dx, cy + dy));
+                    if(cell == null) {
+                        continue;
+                    }
+                    //格子内离中心点最近的位置也比半径或已找到的第limit个商铺远时跳过
+                    double nearest = nearest(cx + dx, cy + dy, x, y);
+                    if(nearest > radiusMeters || (heap.size() == limit && nearest > heap.peek().getDistance())) {
+                        continue;
+                    }
+                    scan(cell, x, y, radiusMeters, limit, heap);
+                }
+            }
+            //2.更外圈的格子与中心点之间至少隔着ring个完整的格子
+            double latitude = Math.min(Math.abs(y) + (ring + 1) * cellDegrees, 89.9);
+            double bound = ring * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+            if(bound > radiusMeters || (heap.size() == limit && heap.peek().getDistance() <= bound)
+                    || ring * cellDegrees > 180) {
+                break;
+            }
+        }
+        NearbyShop[] sorted = new NearbyShop[heap.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = heap.poll();
+        }
+        return Arrays.asList(sorted);
+    }
+
+    /**
+     * 格子内离(x,y)最近的位置到(x,y)的距离(把坐标限制在格子范围内,略微缩小以保证不大于实际最近距离)
+     */
+    private double nearest(int cellX, int cellY, double x, double y) {
+        double nx = Math.max(cellX * cellDegrees, Math.min(x, (cellX + 1) * cellDegrees));
+        double ny = Math.max(cellY * cellDegrees, Math.min(y, (cellY + 1) * cellDegrees));
+        return distance(x, y, nx, ny) * 0.999;
+    }
+
+    private static void scan(Cell cell, double x, double y, double radiusMeters, int limit, PriorityQueue<NearbyShop> heap) {
+        if(cell == null) {
+            return;
+        }
+        double max = heap.size() == limit ? heap.peek().getDistance() : radiusMeters;
+        for (int i = 0; i < cell.ids.length; i++) {
+            //纬度差对应的弧长是距离的下界,先用它排除大部分商铺,避免计算三角函数
+            if(Math.abs(cell.ys[i] - y) * METERS_PER_DEGREE > max) {
+                continue;
+            }
+            double distance = distance(x, y, cell.xs[i], cell.ys[i]);
+            if(distance > max) {
+                continue;
+            }
+            if(heap.size() == limit) {
+                heap.poll();
+            }
+            heap.add(new NearbyShop(cell.ids[i], distance));
+            if(heap.size() == limit) {
+                max = heap.peek().getDistance();
+            }
+        }
+    }
+
+    /**
+     * 半正矢公式计算两点距离(米),与Redis GEO的计算方式相同
+     */
+    static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private long cellKey(double x, double y) {
+        return key((int) Math.floor(x / cellDegrees), (int) Math.floor(y / cellDegrees));
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cy << 32) | (cx & 0xffffffffL);
+    }
+
+    private static int indexOf(long[] ids, int length, long id) {
+        for (int i = 0; i < length; i++) {
+            if(ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.utils.id;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-04:05
+ * @Description: ID时间戳使用的时钟
+ * 与原 RedisIDWorker 一致:按系统时区的本地时间计算秒数,等同于 LocalDateTime.now().toEpochSecond(ZoneOffset.UTC)
+ */
+final class IdClock {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private IdClock() {
+    }
+
+    static long localEpochSecond() {
+        long millis = System.currentTimeMillis();
+        return Math.floorDiv(millis, 1000L) + ZONE.getRules().getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
+    }
+}
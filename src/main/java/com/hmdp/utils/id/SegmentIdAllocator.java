@@ -0,0 +1,143 @@
+package com.hmdp.utils.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-03:20
+ * @Description: 号段模式ID分配器
+ * 1.每次用 INCRBY icr:{prefix}:{yyyy:MM:dd} step 预留一段序列号,进程内用AtomicLong无锁分配
+ * 2.当前号段剩余不足 1/5 时异步预取下一个号段,号段用完时直接切换,正常情况下分配ID不等待Redis
+ * 3.ID结构与原来一致:符号位(1位) + 时间戳(31位,秒) + 序列号(32位);序列号按天计数,跨天时丢弃旧号段
+ * 4.节点重启时未用完的号段作废,ID不连续但不重复
+ */
+@Slf4j
+public class SegmentIdAllocator {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private static final long SECONDS_PER_DAY = 86400;
+    //剩余序列号不足号段长度的 1/PREFETCH_DIVISOR 时预取下一个号段
+    private static final int PREFETCH_DIVISOR = 5;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long beginTimestamp;
+    private final int countBits;
+    private final int step;
+    private final ConcurrentHashMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentIdAllocator(StringRedisTemplate stringRedisTemplate, long beginTimestamp, int countBits, int step) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.beginTimestamp = beginTimestamp;
+        this.countBits = countBits;
+        this.step = step;
+    }
+
+    public long nextId(String prefixKey) {
+        return buffers.computeIfAbsent(prefixKey, SegmentBuffer::new).nextId();
+    }
+
+    /**
+     * 一个号段:[cursor, max],归属于某一天
+     */
+    private static final class Segment {
+        private final long day;
+        private final long max;
+        private final long lowWater;
+        private final AtomicLong cursor;
+
+        private Segment(long day, long start, long max, long lowWater) {
+            this.day = day;
+            this.max = max;
+            this.lowWater = lowWater;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 每个业务前缀一个双缓冲:当前号段 + 预取中的下一个号段
+     */
+    private final class SegmentBuffer {
+
+        private final String prefixKey;
+        private volatile Segment current;
+        private CompletableFuture<Segment> next;
+
+        private SegmentBuffer(String prefixKey) {
+            this.prefixKey = prefixKey;
+        }
+
+        private long nextId() {
+            long nowSecond = IdClock.localEpochSecond();
+            long day = Math.floorDiv(nowSecond, SECONDS_PER_DAY);
+            while (true) {
+                Segment segment = current;
+                if(segment != null && segment.day == day) {
+                    long seq = segment.cursor.getAndIncrement();
+                    if(seq <= segment.max) {
+                        if(seq == segment.lowWater) {
+                            prefetch(segment);
+                        }
+                        return (nowSecond - beginTimestamp) << countBits | seq;
+                    }
+                }
+                //号段用完或跨天,切换号段
+                switchSegment(segment, day);
+            }
+        }
+
+        private synchronized void prefetch(Segment segment) {
+            if(current != segment || next != null) {
+                return;
+            }
+            next = CompletableFuture.supplyAsync(() -> load(segment.day), prefetcher);
+        }
+
+        private synchronized void switchSegment(Segment exhausted, long day) {
+            if(current != exhausted) {
+                //其他线程已经切换
+                return;
+            }
+            Segment segment = null;
+            CompletableFuture<Segment> prefetched = next;
+            next = null;
+            if(prefetched != null) {
+                try {
+                    segment = prefetched.join();
+                } catch (Exception e) {
+                    log.warn("预取号段失败:{}", prefixKey, e);
+                }
+            }
+            if(segment == null || segment.day != day) {
+                segment = load(day);
+            }
+            current = segment;
+        }
+
+        /**
+         * INCRBY预留一个号段
+         */
+        private Segment load(long day) {
+            String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+            Long end = stringRedisTemplate.opsForValue().increment("icr:" + prefixKey + ":" + date, step);
+            if(end == null) {
+                throw new IllegalStateException("号段分配失败:" + prefixKey);
+            }
+            long start = end - step + 1;
+            return new Segment(day, start, end, end - step / PREFETCH_DIVISOR);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hmdp.utils.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-04:10
+ * @Description: 雪花算法本地ID生成(每个ID不访问Redis)
+ * 1.ID结构:符号位(1位) + 时间戳(31位,秒,与号段模式相同) + 雪花标记(1位,恒为1) + workerId(9位) + 序列号(22位)
+ *   雪花标记保证与号段/INCR模式生成的ID(序列号小于2^31)不重复,切换模式后ID仍然唯一
+ * 2.同一秒内序列号用完时借用下一秒,逻辑时间最多领先系统时钟 maxDriftSeconds 秒,超过时等待时钟追上
+ * 3.时钟回拨时继续使用上一次的时间戳和序列号,回拨超过 maxDriftSeconds 秒且序列号用完时抛出异常
+ * 4.workerId由 WorkerIdLease 从Redis租用,Redis短暂不可用时租约到期前继续生成ID
+ */
+public class SnowflakeIdGenerator {
+
+    private static final int SEQUENCE_BITS = 22;
+    private static final int WORKER_BITS = 9;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long SNOWFLAKE_FLAG = 1L << (SEQUENCE_BITS + WORKER_BITS);
+    public static final int MAX_WORKERS = 1 << WORKER_BITS;
+
+    private final WorkerIdLease lease;
+    private final long beginTimestamp;
+    private final long maxDriftSeconds;
+    //当前时间(秒,与 IdClock 相同)
+    private final LongSupplier clock;
+    //时间戳(相对开始时间的秒数) << SEQUENCE_BITS | 序列号
+    private final AtomicLong state = new AtomicLong();
+    private volatile int workerId = -1;
+
+    public SnowflakeIdGenerator(WorkerIdLease lease, long beginTimestamp, long maxDriftSeconds) {
+        this(lease, beginTimestamp, maxDriftSeconds, IdClock::localEpochSecond);
+    }
+
+    /**
+     * 指定时钟(测试时模拟时钟回拨、时间前进)
+     */
+    SnowflakeIdGenerator(WorkerIdLease lease, long beginTimestamp, long maxDriftSeconds, LongSupplier clock) {
+        this.lease = lease;
+        this.beginTimestamp = beginTimestamp;
+        this.maxDriftSeconds = maxDriftSeconds;
+        this.clock = clock;
+    }
+
+    /**
+     * 租用workerId并开始心跳
+     */
+    public void start() {
+        lease.start(() -> state.get() >>> SEQUENCE_BITS);
+    }
+
+    public void stop() {
+        lease.release();
+    }
+
+    public long nextId() {
+        if(!lease.isValid()) {
+            throw new IllegalStateException("workerId租约已失效,暂停生成ID");
+        }
+        int worker = lease.getWorkerId();
+        if(worker != workerId) {
+            switchWorker(worker);
+        }
+        while (true) {
+            long now = clock.getAsLong() - beginTimestamp;
+            long current = state.get();
+            long last = current >>> SEQUENCE_BITS;
+            long next;
+            if(now > last) {
+                //1.进入新的一秒,序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else if((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                //2.同一秒,或时钟回拨(继续使用上一次的时间戳)
+                next = current + 1;
+            } else if(last + 1 - now <= maxDriftSeconds) {
+                //3.序列号用完,借用下一秒
+                next = (last + 1) << SEQUENCE_BITS;
+            } else if(last - now > maxDriftSeconds) {
+                throw new IllegalStateException("时钟回拨" + (last - now) + "秒,超过容忍范围");
+            } else {
+                //4.逻辑时间领先太多,等待时钟追上
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            if(state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << 32 | SNOWFLAKE_FLAG | (long) worker << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 换了workerId:从上一个持有者使用到的时间戳之后开始
+     */
+    private synchronized void switchWorker(int worker) {
+        if(worker == workerId) {
+            return;
+        }
+        long floor = (lease.getInheritedLast() + 1) << SEQUENCE_BITS;
+        state.accumulateAndGet(floor, Math::max);
+        workerId = worker;
+    }
+}
@@ -0,0 +1,182 @@
+package com.hmdp.utils.id;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-04:00
+ * @Description: 雪花算法的workerId租约
+ * 1.启动时从随机位置开始依次 SET id:worker:{n} 节点标识 NX EX ttl,抢到的n即为workerId
+ * 2.后台线程每 ttl/3 续期一次,同时记录时间戳下限 id:worker:{n}:last(当前持有者之后可能用到的最大时间戳)
+ * 3.续期失败(Redis短暂不可用)时,只要距离上次续期成功不超过ttl,租约仍然有效,继续生成ID;
+ *   发现租约已被其他节点持有时立即重新申请
+ * 4.新持有者从上一个持有者记录的时间戳之后开始生成ID,即使时钟不一致也不会与之前的ID重复
+ */
+@Slf4j
+public class WorkerIdLease {
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> LAST_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("leaseRenew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unLock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+        LAST_SCRIPT = new DefaultRedisScript<>();
+        LAST_SCRIPT.setLocation(new ClassPathResource("leaseLast.lua"));
+        LAST_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int maxWorkers;
+    private final long ttlSeconds;
+    //ID时间戳的开始时间(秒)
+    private final long beginTimestamp;
+    //容忍的时钟回拨/序列号借用秒数
+    private final long maxClockDriftSeconds;
+    //节点标识(进程号@主机名 + 随机数,重启后不同)
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString(true);
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "id-worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile int workerId = -1;
+    //上一个持有者使用到的最大时间戳
+    private volatile long inheritedLast;
+    //租约有效期截止时间(毫秒)
+    private volatile long validUntil;
+    //当前使用到的时间戳,心跳时写入Redis
+    private LongSupplier lastUsed = () -> 0;
+
+    public WorkerIdLease(StringRedisTemplate stringRedisTemplate, int maxWorkers, long ttlSeconds,
+                         long beginTimestamp, long maxClockDriftSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxWorkers = maxWorkers;
+        this.ttlSeconds = ttlSeconds;
+        this.beginTimestamp = beginTimestamp;
+        this.maxClockDriftSeconds = maxClockDriftSeconds;
+    }
+
+    /**
+     * 申请workerId并开始心跳
+     * @param lastUsed 当前使用到的时间戳
+     */
+    public synchronized void start(LongSupplier lastUsed) {
+        this.lastUsed = lastUsed;
+        acquire();
+        long period = Math.max(ttlSeconds * 1000 / 3, 1);
+        heartbeat.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public long getInheritedLast() {
+        return inheritedLast;
+    }
+
+    /**
+     * 租约是否仍然有效
+     */
+    public boolean isValid() {
+        return workerId >= 0 && System.currentTimeMillis() < validUntil;
+    }
+
+    /**
+     * 申请workerId(所有workerId都被占用时抛出异常)
+     */
+    public synchronized void acquire() {
+        int start = ThreadLocalRandom.current().nextInt(maxWorkers);
+        for (int k = 0; k < maxWorkers; k++) {
+            int id = (start + k) % maxWorkers;
+            long now = System.currentTimeMillis();
+            Boolean ok = stringRedisTemplate.opsForValue().setIfAbsent(leaseKey(id), owner, ttlSeconds, TimeUnit.SECONDS);
+            if(Boolean.TRUE.equals(ok)) {
+                String last = stringRedisTemplate.opsForValue().get(lastKey(id));
+                inheritedLast = last == null ? 0 : Long.parseLong(last);
+                validUntil = now + ttlSeconds * 1000;
+                workerId = id;
+                log.info("获取workerId:{}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的workerId");
+    }
+
+    /**
+     * 续期,并记录使用到的最大时间戳
+     */
+    private void renew() {
+        int id = workerId;
+        long now = System.currentTimeMillis();
+        try {
+            Long ok = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(leaseKey(id)),
+                    owner, String.valueOf(ttlSeconds * 1000));
+            if(ok != null && ok == 1) {
+                //持有租约期间(包括续期失败后的ttl内)使用的时间戳不会超过 max(当前使用到的时间戳, 当前时钟) + ttl + 借用的秒数,
+                //新持有者从该时间戳之后开始(当前还没有生成ID时lastUsed为0,只能按时钟计算)
+                long floor = Math.max(lastUsed.getAsLong(), IdClock.localEpochSecond() - beginTimestamp) + ttlSeconds + maxClockDriftSeconds;
+                updateLast(id, floor);
+                validUntil = now + ttlSeconds * 1000;
+                return;
+            }
+            //租约已过期并被其他节点持有,重新申请
+            log.warn("workerId:{}的租约已丢失,重新申请", id);
+            acquire();
+        } catch (Exception e) {
+            //Redis暂时不可用,租约到期前继续使用当前workerId
+            log.warn("workerId:{}续期失败,租约剩余{}ms", id, validUntil - now, e);
+        }
+    }
+
+    /**
+     * 释放workerId
+     */
+    public synchronized void release() {
+        heartbeat.shutdownNow();
+        if(workerId < 0) {
+            return;
+        }
+        try {
+            updateLast(workerId, lastUsed.getAsLong());
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(leaseKey(workerId)), owner);
+        } catch (Exception e) {
+            log.warn("释放workerId:{}失败", workerId, e);
+        }
+        workerId = -1;
+    }
+
+    /**
+     * 记录时间戳下限(只增不减,不会覆盖心跳时写入的更大的下限)
+     */
+    private void updateLast(int id, long last) {
+        stringRedisTemplate.execute(LAST_SCRIPT, Collections.singletonList(lastKey(id)), String.valueOf(last));
+    }
+
+    private static String leaseKey(int id) {
+        return RedisConstants.ID_WORKER_KEY + id;
+    }
+
+    private static String lastKey(int id) {
+        return RedisConstants.ID_WORKER_KEY + id + ":last";
+    }
+}
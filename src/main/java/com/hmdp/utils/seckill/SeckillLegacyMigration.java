@@ -0,0 +1,246 @@
+package com.hmdp.utils.seckill;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.distributedLock.RedisLockFactory;
+import com.hmdp.utils.distributedLock.RedisReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-11:20
+ * @Description: 秒杀旧数据迁移(单key库存 -> 分片库存,一次性)
+ * 旧版本每张秒杀券只有一个库存key seckill:stock:{id} 和一个订单集合 seckill:order:{id},所有订单消息写入 stream.orders
+ * 1.启动时转发旧消息队列 stream.orders 中未确认的消息(包括pending list)到用户所在分区的新消息队列 stream.orders:{i},
+ *   由 SeckillOrderConsumer 创建订单(订单按id幂等写入,转发后宕机重复转发也不会重复下单),转发完成后删除旧队列
+ * 2.旧秒杀券的订单集合按用户拆分到各自主分片的订单集合(保留一人一单的判断),剩余库存平均拆分到各分片,最后写入分片数,
+ *   写入分片数之前该秒杀券仍不可抢购,不会出现库存已拆分但订单集合为空的中间状态
+ * 3.启动时迁移所有旧秒杀券并写入迁移标记;预热接口和加载时间窗口时遇到未迁移的秒杀券也会先迁移,不会按数据库库存重新初始化
+ * 4.迁移在分布式锁内执行,多个节点同时启动只有一个节点迁移
+ */
+@Slf4j
+@Component
+public class SeckillLegacyMigration {
+
+    //旧版本的订单消息队列
+    private static final String LEGACY_STREAM_KEY = "stream.orders";
+    private static final String MIGRATION_LOCK = "seckill:legacy:migration";
+    private static final String MIGRATION_CONSUMER = "legacy-migration";
+    private static final long MIGRATION_LOCK_WAIT_SECONDS = 30;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private SeckillOrderRecovery seckillOrderRecovery;
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+
+    //每次转发的消息数量
+    @Value("${hmdp.seckill.order.batch-size:200}")
+    private int batchSize;
+
+    @PostConstruct
+    private void init() {
+        if(BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.SECKILL_LEGACY_MIGRATED_KEY))) {
+            return;
+        }
+        RedisReentrantLock lock = redisLockFactory.getLock(MIGRATION_LOCK);
+        try {
+            if(!lock.tryLock(MIGRATION_LOCK_WAIT_SECONDS, -1, TimeUnit.SECONDS)) {
+                //其他节点正在迁移,未迁移的秒杀券在预热时迁移
+                log.warn("其他节点正在迁移秒杀旧数据,跳过");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            if(BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.SECKILL_LEGACY_MIGRATED_KEY))) {
+                return;
+            }
+            //1.转发旧消息队列
+            drainLegacyStream();
+            //2.迁移旧秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>().select("voucher_id"));
+            int migrated = 0;
+            for (SeckillVoucher voucher : vouchers) {
+                if(seckillStockRouter.shardsOf(voucher.getVoucherId()) == 0 && migrate(voucher.getVoucherId())) {
+                    migrated++;
+                }
+            }
+            //3.写入迁移标记,之后启动不再检查
+            stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_LEGACY_MIGRATED_KEY, String.valueOf(System.currentTimeMillis()));
+            log.info("秒杀旧数据迁移完成,迁移秒杀券数量:{}", migrated);
+        } catch (Exception e) {
+            //没有写入迁移标记,下次启动重新迁移(转发和拆分都可以重复执行)
+            log.error("秒杀旧数据迁移失败", e);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 迁移单张旧秒杀券(预热或加载时间窗口时发现分片数不存在)
+     * @param voucherId 优惠券id
+     * @return 秒杀券已有分片库存(迁移成功或已被其他节点迁移)返回true;没有旧数据返回false
+     */
+    public boolean migrateVoucher(Long voucherId) {
+        if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(RedisConstants.SECKILL_STOCK_KEY + voucherId))) {
+            return false;
+        }
+        RedisReentrantLock lock = redisLockFactory.getLock(MIGRATION_LOCK);
+        try {
+            if(!lock.tryLock(MIGRATION_LOCK_WAIT_SECONDS, -1, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("等待秒杀旧数据迁移超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待秒杀旧数据迁移被中断", e);
+        }
+        try {
+            //获取锁后再次检查,其他节点可能已经迁移
+            return seckillStockRouter.shardsOf(voucherId) > 0 || migrate(voucherId);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 拆分旧秒杀券的订单集合和库存(调用方持有迁移锁)
+     */
+    private boolean migrate(Long voucherId) {
+        String legacyStockKey = RedisConstants.SECKILL_STOCK_KEY + voucherId;
+        String legacyOrderKey = RedisConstants.SECKILL_ORDER_KEY + voucherId;
+        String stock = stringRedisTemplate.opsForValue().get(legacyStockKey);
+        if(stock == null) {
+            return false;
+        }
+        int shards = seckillStockRouter.getDefaultShards();
+        //1.已下单的用户写入各自主分片的订单集合
+        long users = 0;
+        Map<Integer, List<String>> byShard = new HashMap<>();
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(legacyOrderKey, ScanOptions.scanOptions().count(batchSize).build())) {
+            while (cursor.hasNext()) {
+                String userId = cursor.next();
+                List<String> list = byShard.computeIfAbsent(SeckillStockRouter.homeShard(Long.valueOf(userId), shards), k -> new ArrayList<>());
+                list.add(userId);
+                users++;
+                if(list.size() >= batchSize) {
+                    addOrders(voucherId, byShard);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        addOrders(voucherId, byShard);
+        //2.剩余库存拆分到各分片,最后写入分片数(之后才可以抢购)
+        seckillStockRouter.initStock(voucherId, Math.max(Integer.parseInt(stock), 0));
+        //3.删除旧数据
+        stringRedisTemplate.delete(legacyStockKey);
+        stringRedisTemplate.delete(legacyOrderKey);
+        log.info("秒杀券{}迁移到{}个分片,剩余库存:{},已下单用户:{}", voucherId, shards, stock, users);
+        return true;
+    }
+
+    private void addOrders(Long voucherId, Map<Integer, List<String>> byShard) {
+        byShard.forEach((shard, userIds) -> {
+            if(!userIds.isEmpty()) {
+                seckillStockRouter.templateFor(shard).opsForSet()
+                        .add(SeckillStockRouter.orderKey(voucherId, shard), userIds.toArray(new String[0]));
+            }
+        });
+        byShard.clear();
+    }
+
+    /**
+     * 转发旧消息队列中未确认的消息到新消息队列,完成后删除旧队列
+     */
+    private void drainLegacyStream() {
+        if(!BooleanUtil.isTrue(stringRedisTemplate.hasKey(LEGACY_STREAM_KEY))) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForStream().createGroup(LEGACY_STREAM_KEY, ReadOffset.from("0"), RedisConstants.SECKILL_STREAM_GROUP);
+        } catch (Exception e) {
+            //BUSYGROUP:消费者组已存在(旧版本已创建)
+            log.debug("消费者组已存在:{}", LEGACY_STREAM_KEY);
+        }
+        //1.旧版本消费者未确认的消息全部转移给迁移消费者
+        seckillOrderRecovery.claim(LEGACY_STREAM_KEY, MIGRATION_CONSUMER, Duration.ZERO);
+        //2.先转发pending list中的消息(0),再转发未投递的消息(>)
+        long forwarded = 0;
+        boolean pendingDone = false;
+        while (true) {
+            List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    Consumer.from(RedisConstants.SECKILL_STREAM_GROUP, MIGRATION_CONSUMER),
+                    StreamReadOptions.empty().count(batchSize),
+                    StreamOffset.create(LEGACY_STREAM_KEY, pendingDone ? ReadOffset.lastConsumed() : ReadOffset.from("0"))
+            );
+            if(list == null || list.isEmpty()) {
+                if(pendingDone) {
+                    break;
+                }
+                pendingDone = true;
+                continue;
+            }
+            forwarded += forward(list);
+        }
+        //3.全部确认后删除旧队列
+        stringRedisTemplate.delete(LEGACY_STREAM_KEY);
+        log.info("旧订单消息队列{}转发完成,转发消息数量:{}", LEGACY_STREAM_KEY, forwarded);
+    }
+
+    /**
+     * 按用户转发到主分区的消息队列,转发后确认
+     */
+    private int forward(List<MapRecord<String, Object, Object>> list) {
+        int shards = seckillStockRouter.getDefaultShards();
+        RecordId[] recordIds = new RecordId[list.size()];
+        int forwarded = 0;
+        for (int i = 0; i < list.size(); i++) {
+            MapRecord<String, Object, Object> record = list.get(i);
+            recordIds[i] = record.getId();
+            Map<Object, Object> value = record.getValue();
+            //已被XDEL删除的消息在pending list中没有内容,直接确认
+            if(value == null || value.get("userId") == null) {
+                continue;
+            }
+            Map<String, String> message = new HashMap<>(4);
+            value.forEach((k, v) -> message.put(k.toString(), v.toString()));
+            int partition = SeckillStockRouter.homeShard(Long.valueOf(message.get("userId")), shards);
+            seckillStockRouter.templateFor(partition).opsForStream().add(SeckillStockRouter.streamKey(partition), message);
+            forwarded++;
+        }
+        stringRedisTemplate.opsForStream().acknowledge(LEGACY_STREAM_KEY, RedisConstants.SECKILL_STREAM_GROUP, recordIds);
+        return forwarded;
+    }
+}
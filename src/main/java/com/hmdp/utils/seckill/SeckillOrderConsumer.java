@@ -0,0 +1,283 @@
+package com.hmdp.utils.seckill;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-02:00
+ * @Description: 秒杀订单消息消费者
+ * 1.订单消息按用户分区到K个消息队列 stream.orders:{i}(K = 库存分片数,同一用户的订单消息始终在同一个队列中)
+ * 2.每个节点启动一组工作线程,消费者名称 = 节点名称-线程序号(节点名称按 配置 > POD_NAME > HOSTNAME > 主机名 加进程号 推导),
+ *   多个节点不再共用同一个消费者名称,pending list互不干扰
+ * 3.每个队列同一时刻只由一个消费者处理(工作线程先获取队列租约),有处理失败的消息时暂停读取新消息,保证同一用户的订单按顺序创建
+ *   (投递次数达到上限转入死信队列的消息除外);
+ *   持有者宕机后租约过期,由其他节点接管,接管时将原持有者未确认的消息转移给自己(pending list的恢复见 SeckillOrderRecovery)
+ * 4.持有租约超过一定时间后主动释放,让新加入的节点有机会分担队列
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    private static final DefaultRedisScript<Long> LEASE_RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> LEASE_RELEASE_SCRIPT;
+    static {
+        LEASE_RENEW_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RENEW_SCRIPT.setLocation(new ClassPathResource("leaseRenew.lua"));
+        LEASE_RENEW_SCRIPT.setResultType(Long.class);
+        LEASE_RELEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_RELEASE_SCRIPT.setLocation(new ClassPathResource("unLock.lua"));
+        LEASE_RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private SeckillOrderRecovery seckillOrderRecovery;
+
+    //节点名称,为空时自动推导
+    @Value("${hmdp.seckill.order.consumer-name:}")
+    private String consumerName;
+    //每个节点的工作线程数,0表示与队列数相同(每个线程同一时刻只持有一个队列的租约,线程数少于队列数时部分队列无人消费)
+    @Value("${hmdp.seckill.order.workers:0}")
+    private int workers;
+    //每次从消息队列中批量获取的订单数量
+    @Value("${hmdp.seckill.order.batch-size:200}")
+    private int batchSize;
+    //消息队列为空时阻塞等待的时间(毫秒)
+    @Value("${hmdp.seckill.order.block-millis:2000}")
+    private long blockMillis;
+    //队列租约时长(毫秒)
+    @Value("${hmdp.seckill.order.lease-millis:30000}")
+    private long leaseMillis;
+    //连续持有租约超过该时间后主动释放(毫秒)
+    @Value("${hmdp.seckill.order.lease-hold-millis:60000}")
+    private long leaseHoldMillis;
+
+    private int partitions;
+    private ExecutorService executor;
+    private volatile boolean running = true;
+    //当前节点持有租约的队列数量
+    private final AtomicInteger owned = new AtomicInteger();
+
+    @PostConstruct
+    private void init() {
+        partitions = seckillStockRouter.getDefaultShards();
+        if(StrUtil.isBlank(consumerName)) {
+            consumerName = deriveNodeName();
+        }
+        int threads = workers > 0 ? workers : partitions;
+        if(threads < partitions) {
+            log.warn("订单消费线程数{}少于队列数{},所有节点的线程总数不足时部分队列的订单会积压", threads, partitions);
+        }
+        log.info("开始提交消息队列中的订单信息任务,节点:{},队列数:{},工作线程数:{}", consumerName, partitions, threads);
+        for (int i = 0; i < partitions; i++) {
+            seckillStockRouter.createGroup(i);
+        }
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "seckill-order-" + index.getAndIncrement()));
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Worker(consumerName + "-" + i));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public int getOwnedPartitions() {
+        return owned.get();
+    }
+
+    /**
+     * 节点名称:POD_NAME > HOSTNAME > 主机名,加上进程号区分同一主机上的多个实例
+     */
+    private static String deriveNodeName() {
+        String host = System.getenv("POD_NAME");
+        if(StrUtil.isBlank(host)) {
+            host = System.getenv("HOSTNAME");
+        }
+        if(StrUtil.isBlank(host)) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "unknown";
+            }
+        }
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        return host + "-" + pid;
+    }
+
+    private static String leaseKey(int partition) {
+        return RedisConstants.SECKILL_ORDER_LEASE_KEY + "{" + partition + "}";
+    }
+
+    /**
+     * 工作线程:获取一个队列的租约,消费该队列直到租约丢失或持有时间到期,然后重新竞争
+     */
+    private class Worker implements Runnable {
+
+        private final String name;
+        private int next = ThreadLocalRandom.current().nextInt(partitions);
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    int partition = acquire();
+                    if(partition < 0) {
+                        //所有队列都已被其他消费者持有,稍后重试
+                        TimeUnit.MILLISECONDS.sleep(blockMillis);
+                        continue;
+                    }
+                    owned.incrementAndGet();
+                    try {
+                        consume(partition);
+                    } finally {
+                        owned.decrementAndGet();
+                        release(partition);
+                    }
+                    //主动释放后稍等片刻,让其他节点有机会获取该队列
+                    TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(blockMillis + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("订单消费线程{}异常", name, e);
+                }
+            }
+        }
+
+        /**
+         * 从上次的位置开始依次尝试获取队列租约
+         * @return 队列序号;全部被持有时返回-1
+         */
+        private int acquire() {
+            for (int k = 0; k < partitions; k++) {
+                int partition = (next + k) % partitions;
+                Boolean ok = stringRedisTemplate.opsForValue()
+                        .setIfAbsent(leaseKey(partition), name, leaseMillis, TimeUnit.MILLISECONDS);
+                if(Boolean.TRUE.equals(ok)) {
+                    next = (partition + 1) % partitions;
+                    return partition;
+                }
+            }
+            return -1;
+        }
+
+        private boolean renew(int partition) {
+            Long ok = stringRedisTemplate.execute(LEASE_RENEW_SCRIPT, Collections.singletonList(leaseKey(partition)),
+                    name, String.valueOf(leaseMillis));
+            return ok != null && ok == 1;
+        }
+
+        private void release(int partition) {
+            stringRedisTemplate.execute(LEASE_RELEASE_SCRIPT, Collections.singletonList(leaseKey(partition)), name);
+        }
+
+        private void consume(int partition) throws InterruptedException {
+            String queueName = SeckillStockRouter.streamKey(partition);
+            //1.接管队列:之前持有者未确认的消息全部转移给自己,并先处理积压的pending消息
+            seckillOrderRecovery.claim(queueName, name, Duration.ZERO);
+            while (running && renew(partition)
+                    && seckillOrderRecovery.recover(queueName, name, list -> handlerRecords(queueName, list)) > 0) {
+                log.debug("{}继续处理队列{}积压的pending消息", name, queueName);
+            }
+            boolean blocked = seckillOrderRecovery.hasPending(queueName, name);
+            long deadline = System.currentTimeMillis() + leaseHoldMillis;
+            long nextRecovery = System.currentTimeMillis() + seckillOrderRecovery.getRetryBackoffMillis();
+            while (running && System.currentTimeMillis() < deadline && renew(partition)) {
+                //2.定期重试pending list中到达退避时间的消息(失败的消息不会反复重试占满CPU)
+                if(System.currentTimeMillis() >= nextRecovery) {
+                    seckillOrderRecovery.recover(queueName, name, list -> handlerRecords(queueName, list));
+                    blocked = seckillOrderRecovery.hasPending(queueName, name);
+                    nextRecovery = System.currentTimeMillis() + seckillOrderRecovery.getRetryBackoffMillis();
+                }
+                //3.有处理失败的消息时暂停读取新消息,直到它重试成功或转入死信队列(同一用户后下的订单不会先创建)
+                if(blocked) {
+                    TimeUnit.MILLISECONDS.sleep(Math.max(Math.min(nextRecovery - System.currentTimeMillis(), blockMillis), 1));
+                    continue;
+                }
+                try {
+                    //4.批量获取消息队列中的订单信息 xreadgroup group g1 consumer count N block T streams stream.orders:{i} >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(RedisConstants.SECKILL_STREAM_GROUP, name),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
+                    );
+                    //4.1 若获取失败,则说明没有消息,则继续下一次循环获取
+                    if(list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    //5.消息获取成功,批量下单并ACK
+                    handlerRecords(queueName, list);
+                } catch (Exception e) {
+                    //若消息处理异常,则消息留在pending list中,退避后重试
+                    log.warn("处理订单异常,稍后重试", e);
+                    blocked = true;
+                }
+            }
+        }
+
+        /**
+         * 一个事务内批量创建订单(一条多行INSERT + 一条UPDATE扣减库存),事务提交后一次ACK整批消息
+         */
+        private void handlerRecords(String queueName, List<? extends MapRecord<String, ?, ?>> list) {
+            List<VoucherOrder> voucherOrders = new ArrayList<>(list.size());
+            RecordId[] recordIds = new RecordId[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                MapRecord<String, ?, ?> record = list.get(i);
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                recordIds[i] = record.getId();
+            }
+            voucherOrderService.asyncCreateVoucherOrders(voucherOrders);
+            //ACK确认(防止消息被同一消费者组中的消费者重复消费) XACK stream.orders:{i} g1 id1 id2 ...
+            stringRedisTemplate.opsForStream().acknowledge(queueName, RedisConstants.SECKILL_STREAM_GROUP, recordIds);
+        }
+    }
+}
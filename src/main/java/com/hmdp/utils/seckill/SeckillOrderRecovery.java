@@ -0,0 +1,279 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-02:40
+ * @Description: 订单消息pending list恢复
+ * 1.认领其他消费者空闲超过一定时间的消息(消费者宕机或失去队列租约后遗留的消息)
+ * 2.处理失败的消息按投递次数指数退避后重试,每次重试通过XCLAIM重新投递,投递次数由Redis记录;
+ *   按消息id顺序重试,失败的消息之后的消息等待它成功或转入死信队列后再处理
+ * 3.投递次数达到上限的消息转入死信队列并确认,不再阻塞后续消息
+ * 4.定时采集每个队列pending list的消息数量和最早消息的等待时间
+ * (Redis 6.2才支持XAUTOCLAIM,这里用 XPENDING + XCLAIM 实现同样的认领逻辑)
+ */
+@Slf4j
+@Component
+public class SeckillOrderRecovery {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+
+    //每次检查的pending消息数量
+    @Value("${hmdp.seckill.order.batch-size:200}")
+    private int batchSize;
+    //其他消费者的消息空闲超过该时间后认领(毫秒)
+    @Value("${hmdp.seckill.order.claim-idle-millis:60000}")
+    private long claimIdleMillis;
+    //最大投递次数,达到后转入死信队列
+    @Value("${hmdp.seckill.order.max-deliveries:5}")
+    private int maxDeliveries;
+    //第一次重试的退避时间(毫秒),之后每次翻倍
+    @Value("${hmdp.seckill.order.retry-backoff-millis:1000}")
+    private long retryBackoffMillis;
+    //退避时间上限(毫秒)
+    @Value("${hmdp.seckill.order.retry-backoff-max-millis:60000}")
+    private long retryBackoffMaxMillis;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    //队列 -> [pending消息数量, 最早消息的等待时间(毫秒)]
+    private final Map<String, long[]> pendingStats = new ConcurrentHashMap<>();
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * 将其他消费者空闲超过minIdle的消息转移给consumer(只转移所有权,不增加投递次数)
+     * @return 转移的消息数量
+     */
+    public int claim(String queueName, String consumer, Duration minIdle) {
+        byte[] key = queueName.getBytes(StandardCharsets.UTF_8);
+        int total = 0;
+        //按消息id分页扫描整个pending list
+        String start = null;
+        while (true) {
+            Range<String> range = start == null ? Range.unbounded() : Range.rightUnbounded(Range.Bound.inclusive(start));
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(queueName, RedisConstants.SECKILL_STREAM_GROUP, range, batchSize);
+            List<RecordId> ids = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if(!message.getIdAsString().equals(start) && !consumer.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    ids.add(message.getId());
+                }
+            }
+            if(!ids.isEmpty()) {
+                //XCLAIM时Redis会再次检查空闲时间,其他消费者刚处理过的消息不会被转移
+                List<RecordId> moved = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                        connection.streamCommands().xClaimJustId(key, RedisConstants.SECKILL_STREAM_GROUP, consumer,
+                                RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids.toArray(new RecordId[0]))));
+                total += moved == null ? 0 : moved.size();
+            }
+            if(pending.size() < batchSize) {
+                break;
+            }
+            start = pending.get(pending.size() - 1).getIdAsString();
+        }
+        if(total > 0) {
+            claimed.addAndGet(total);
+            log.info("{}认领了队列{}中{}条未确认的订单消息", consumer, queueName, total);
+        }
+        return total;
+    }
+
+    /**
+     * 恢复consumer的pending list:认领空闲超时的消息,按消息id顺序重新投递并处理到达退避时间的消息,超过投递次数的消息转入死信队列
+     * 只处理从最早的消息开始连续到达退避时间的一段,失败的消息之后的消息不会先于它处理(保证同一队列的订单按顺序创建)
+     * @param handler 批量处理消息并ACK,失败时抛出异常
+     * @return 处理成功的消息数量
+     */
+    public int recover(String queueName, String consumer, java.util.function.Consumer<List<MapRecord<String, String, String>>> handler) {
+        claim(queueName, consumer, Duration.ofMillis(claimIdleMillis));
+        //1.按消息id顺序:超过投递次数的转入死信队列,遇到还没到退避时间的消息时停止
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(queueName,
+                Consumer.from(RedisConstants.SECKILL_STREAM_GROUP, consumer), Range.unbounded(), batchSize);
+        List<PendingMessage> due = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            long deliveries = message.getTotalDeliveryCount();
+            if(deliveries >= maxDeliveries) {
+                deadLetter(queueName, message);
+            } else if(message.getElapsedTimeSinceLastDelivery().toMillis() >= backoff(deliveries)) {
+                due.add(message);
+            } else {
+                break;
+            }
+        }
+        if(due.isEmpty()) {
+            return 0;
+        }
+        //2.重新投递给自己(XCLAIM会增加投递次数并重置空闲时间)
+        List<RecordId> ids = new ArrayList<>(due.size());
+        due.forEach(message -> ids.add(message.getId()));
+        List<MapRecord<String, String, String>> records = redeliver(queueName, consumer, ids);
+        retried.addAndGet(records.size());
+        //3.整批处理,失败时按顺序逐条处理,遇到失败的消息停止,它和之后的消息留在pending list中等待下一次退避
+        int success = 0;
+        try {
+            handler.accept(records);
+            success = records.size();
+        } catch (Exception e) {
+            RecordId failed = null;
+            for (MapRecord<String, String, String> record : records) {
+                try {
+                    handler.accept(Collections.singletonList(record));
+                    success++;
+                } catch (Exception ex) {
+                    log.warn("订单消息{}重试失败", record.getId(), ex);
+                    failed = record.getId();
+                    break;
+                }
+            }
+            //失败的消息之后没有处理的消息恢复原来的投递次数和空闲时间,不因前面的消息失败而提前转入死信队列
+            for (int i = 0; failed != null && i < due.size(); i++) {
+                if(due.get(i).getId().equals(failed)) {
+                    restore(queueName, consumer, due.subList(i + 1, due.size()));
+                    break;
+                }
+            }
+        }
+        recovered.addAndGet(success);
+        return success;
+    }
+
+    /**
+     * consumer的pending list中是否还有未确认的消息(处理失败等待重试)
+     */
+    public boolean hasPending(String queueName, String consumer) {
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(queueName,
+                Consumer.from(RedisConstants.SECKILL_STREAM_GROUP, consumer), Range.unbounded(), 1L);
+        return !pending.isEmpty();
+    }
+
+    private void restore(String queueName, String consumer, List<PendingMessage> messages) {
+        byte[] key = queueName.getBytes(StandardCharsets.UTF_8);
+        for (PendingMessage message : messages) {
+            //XCLAIM JUSTID 不增加投递次数,RETRYCOUNT/IDLE 设置为重新投递前的值
+            stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                    connection.streamCommands().xClaimJustId(key, RedisConstants.SECKILL_STREAM_GROUP, consumer,
+                            RedisStreamCommands.XClaimOptions.minIdle(Duration.ZERO).ids(message.getId())
+                                    .retryCount(message.getTotalDeliveryCount())
+                                    .idle(message.getElapsedTimeSinceLastDelivery())));
+        }
+    }
+
+    /**
+     * 第n次投递失败后的退避时间:base * 2^(n-1),不超过上限
+     */
+    private long backoff(long deliveries) {
+        long shift = Math.min(Math.max(deliveries - 1, 0), 30);
+        return Math.min(retryBackoffMillis << shift, retryBackoffMaxMillis);
+    }
+
+    private List<MapRecord<String, String, String>> redeliver(String queueName, String consumer, List<RecordId> ids) {
+        byte[] key = queueName.getBytes(StandardCharsets.UTF_8);
+        List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(key, RedisConstants.SECKILL_STREAM_GROUP, consumer,
+                        RedisStreamCommands.XClaimOptions.minIdle(Duration.ZERO).ids(ids.toArray(new RecordId[0]))));
+        if(records == null) {
+            return Collections.emptyList();
+        }
+        List<MapRecord<String, String, String>> result = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            result.add(record.deserialize(RedisSerializer.string()));
+        }
+        return result;
+    }
+
+    /**
+     * 消息转入死信队列 stream.orders.dlq 并确认
+     */
+    private void deadLetter(String queueName, PendingMessage message) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(queueName, Range.just(message.getIdAsString()));
+        if(records != null && !records.isEmpty()) {
+            Map<String, String> value = new HashMap<>();
+            records.get(0).getValue().forEach((k, v) -> value.put(k.toString(), v.toString()));
+            value.put("source", queueName);
+            value.put("recordId", message.getIdAsString());
+            value.put("deliveries", String.valueOf(message.getTotalDeliveryCount()));
+            stringRedisTemplate.opsForStream().add(RedisConstants.SECKILL_DLQ_KEY, value);
+        }
+        stringRedisTemplate.opsForStream().acknowledge(queueName, RedisConstants.SECKILL_STREAM_GROUP, message.getId());
+        deadLettered.incrementAndGet();
+        log.error("订单消息{}投递{}次仍处理失败,已转入死信队列", message.getIdAsString(), message.getTotalDeliveryCount());
+    }
+
+    /**
+     * 定时采集每个队列pending list的消息数量和最早消息的等待时间
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.order.metrics-interval:10000}")
+    public void sample() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < seckillStockRouter.getDefaultShards(); i++) {
+            String queueName = SeckillStockRouter.streamKey(i);
+            try {
+                PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(queueName, RedisConstants.SECKILL_STREAM_GROUP);
+                RecordId oldest = summary.getTotalPendingMessages() == 0 ? null : summary.minRecordId();
+                long age = oldest == null ? 0 : now - oldest.getTimestamp();
+                pendingStats.put(queueName, new long[]{summary.getTotalPendingMessages(), age});
+            } catch (Exception e) {
+                log.debug("采集队列{}的pending list失败", queueName, e);
+            }
+        }
+    }
+
+    /**
+     * 恢复指标:认领/重试/恢复/死信数量,每个队列pending list的消息数量和最早消息的等待时间
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("claimed", claimed.get());
+        metrics.put("retried", retried.get());
+        metrics.put("recovered", recovered.get());
+        metrics.put("deadLettered", deadLettered.get());
+        Map<String, Object> queues = new LinkedHashMap<>();
+        pendingStats.forEach((queue, stats) -> {
+            Map<String, Long> q = new LinkedHashMap<>();
+            q.put("pending", stats[0]);
+            q.put("oldestAgeMillis", stats[1]);
+            queues.put(queue, q);
+        });
+        metrics.put("queues", queues);
+        return metrics;
+    }
+}
@@ -0,0 +1,75 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-00:40
+ * @Description: 秒杀券售罄标记
+ * 某个节点第一次确认秒杀券售罄时,在本地记录并通过Redis发布订阅广播给所有节点,
+ * 之后所有节点对该秒杀券的抢购请求直接在进程内拒绝,不再访问Redis
+ * (广播丢失或节点启动较晚时,该节点最多再执行一次Lua脚本即可得到售罄结果并记录)
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutMarker implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    //已售罄的秒杀券id
+    private final Set<Long> soldOut = ConcurrentHashMap.newKeySet();
+
+    public SeckillSoldOutMarker(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.contains(voucherId);
+    }
+
+    /**
+     * 标记售罄,本节点第一次标记时广播给其他节点
+     * @param voucherId 秒杀券id
+     */
+    public void markSoldOut(Long voucherId) {
+        if(soldOut.add(voucherId)) {
+            log.info("秒杀券{}已售罄", voucherId);
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 清除售罄标记(重新设置库存时)
+     * @param voucherId 秒杀券id
+     */
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+    }
+
+    /**
+     * 接收其他节点广播的售罄消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        soldOut.add(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,318 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-23:50
+ * @Description: 秒杀库存分片
+ * 1.创建秒杀券时将库存拆分到N个分片,第i个分片的库存、订单集合、订单消息队列使用相同的hash tag {i},位于同一个slot,
+ *   不同分片分布在Redis集群的不同节点上,一次秒杀的Lua脚本只访问一个slot
+ * 2.用户按id哈希到固定的主分片,在主分片上判断一人一单并扣减库存
+ * 3.主分片库存不足时,用户在主分片上的占位保留,依次向其他分片借库存;所有分片都没有库存时删除占位
+ *   借到库存后订单消息仍发送到主分片的消息队列,同一用户的订单消息始终在同一个队列中(按用户分区,保证按用户有序)
+ *   占位时在主分片写入借库存记录,借出分片记录借给了哪个订单;调用方在借库存过程中宕机时,
+ *   由对账任务根据借出记录补发订单消息或删除占位,库存不会丢失
+ * 4.库存只减不增,已确认为空的分片记录在本地,之后不再访问
+ * 5.秒杀时间窗口写入每个分片(与库存同一个slot),由Lua脚本按Redis服务器时间校验
+ * 6.旧版本的单key库存、订单集合和订单消息队列由 SeckillLegacyMigration 一次性迁移
+ */
+@Slf4j
+@Component
+public class SeckillStockRouter {
+
+    public static final int SUCCESS = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int DUPLICATE = 2;
+    private static final int NEED_BORROW = 3;
+    public static final int NOT_FOUND = 4;
+    public static final int NOT_STARTED = 5;
+    public static final int ENDED = 6;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT;
+    private static final DefaultRedisScript<Long> BORROW_CANCEL_SCRIPT;
+    private static final DefaultRedisScript<Long> BORROW_FINISH_SCRIPT;
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        BORROW_SCRIPT = new DefaultRedisScript<>();
+        BORROW_SCRIPT.setLocation(new ClassPathResource("seckillBorrow.lua"));
+        BORROW_SCRIPT.setResultType(Long.class);
+        BORROW_CANCEL_SCRIPT = new DefaultRedisScript<>();
+        BORROW_CANCEL_SCRIPT.setLocation(new ClassPathResource("seckillBorrowCancel.lua"));
+        BORROW_CANCEL_SCRIPT.setResultType(Long.class);
+        BORROW_FINISH_SCRIPT = new DefaultRedisScript<>();
+        BORROW_FINISH_SCRIPT.setLocation(new ClassPathResource("seckillBorrowFinish.lua"));
+        BORROW_FINISH_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    //新建秒杀券的库存分片数,已创建的秒杀券使用创建时的分片数
+    @Value("${hmdp.seckill.stock-shards:8}")
+    private int defaultShards;
+    //借库存记录超过该时间仍未完成时,由对账任务处理(毫秒)
+    @Value("${hmdp.seckill.borrow-timeout-millis:30000}")
+    private long borrowTimeoutMillis;
+
+    //优惠券id -> 分片数
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+    //优惠券id -> 库存已为0的分片
+    private final Map<Long, Set<Integer>> emptyShards = new ConcurrentHashMap<>();
+
+    public SeckillStockRouter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public int getDefaultShards() {
+        return defaultShards;
+    }
+
+    public void setDefaultShards(int defaultShards) {
+        this.defaultShards = defaultShards;
+    }
+
+    /**
+     * 分片所在的Redis(集群模式下由客户端按slot路由,直接返回同一个模板;压测时可按分片指定不同的节点)
+     */
+    protected StringRedisTemplate templateFor(int shard) {
+        return stringRedisTemplate;
+    }
+
+    /**
+     * 初始化秒杀券库存:库存平均拆分到各分片(余数分给前几个分片),并为每个分片的订单消息队列创建消费者组
+     * @param voucherId 优惠券id
+     * @param stock 总库存
+     */
+    public void initStock(Long voucherId, int stock) {
+        int shards = defaultShards;
+        for (int i = 0; i < shards; i++) {
+            int shardStock = stock / shards + (i < stock % shards ? 1 : 0);
+            templateFor(i).opsForValue().set(stockKey(voucherId, i), String.valueOf(shardStock));
+            createGroup(i);
+        }
+        templateFor(0).opsForValue().set(RedisConstants.SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        shardCounts.put(voucherId, shards);
+        emptyShards.remove(voucherId);
+    }
+
+    /**
+     * 将秒杀时间窗口写入每个分片
+     * @param voucherId 优惠券id
+     * @param beginMillis 开始时间(毫秒时间戳)
+     * @param endMillis 结束时间(毫秒时间戳)
+     */
+    public void setWindow(Long voucherId, long beginMillis, long endMillis) {
+        Map<String, String> window = new HashMap<>(4);
+        window.put("begin", String.valueOf(beginMillis));
+        window.put("end", String.valueOf(endMillis));
+        int shards = shardsOf(voucherId);
+        for (int i = 0; i < shards; i++) {
+            templateFor(i).opsForHash().putAll(windowKey(voucherId, i), window);
+        }
+    }
+
+    /**
+     * 读取秒杀时间窗口(第0个分片)
+     * @return [开始时间, 结束时间];不存在时返回null
+     */
+    public long[] getWindow(Long voucherId) {
+        List<Object> window = templateFor(0).opsForHash().multiGet(windowKey(voucherId, 0), Arrays.asList("begin", "end"));
+        if(window.get(0) == null || window.get(1) == null) {
+            return null;
+        }
+        return new long[]{Long.parseLong((String) window.get(0)), Long.parseLong((String) window.get(1))};
+    }
+
+    /**
+     * 抢购:先在主分片上判断一人一单并扣减库存,主分片库存不足时向其他分片借库存
+     * @return SUCCESS 抢购成功(订单消息已发送到对应分片的消息队列);SOLD_OUT 库存不足;DUPLICATE 重复下单;
+     *         NOT_FOUND 库存或时间窗口未初始化;NOT_STARTED 秒杀未开始;ENDED 秒杀已结束
+     */
+    public int tryAcquire(Long voucherId, Long userId, Long orderId) {
+        int shards = shardsOf(voucherId);
+        if(shards == 0) {
+            return NOT_FOUND;
+        }
+        String[] args = {voucherId.toString(), userId.toString(), orderId.toString()};
+        //1.主分片
+        int home = homeShard(userId, shards);
+        Long result = templateFor(home).execute(SECKILL_SCRIPT,
+                Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home), streamKey(home), windowKey(voucherId, home), borrowKey(home)),
+                (Object[]) args);
+        int r = result == null ? SOLD_OUT : result.intValue();
+        if(r != NEED_BORROW) {
+            return r;
+        }
+        //2.主分片库存不足,用户已在主分片上占位并写入了借库存记录,依次向相邻分片借库存
+        Set<Integer> empty = emptyShards.computeIfAbsent(voucherId, k -> ConcurrentHashMap.newKeySet());
+        empty.add(home);
+        for (int k = 1; k < shards; k++) {
+            int shard = (home + k) % shards;
+            if(empty.contains(shard)) {
+                continue;
+            }
+            Long borrowed = templateFor(shard).execute(BORROW_SCRIPT,
+                    Arrays.asList(stockKey(voucherId, shard), windowKey(voucherId, shard), borrowedKey(voucherId, shard)),
+                    orderId.toString(), String.valueOf(RedisConstants.SECKILL_BORROWED_TTL));
+            if(borrowed != null && borrowed == SUCCESS) {
+                //借到库存,订单消息发送到主分片的消息队列
+                try {
+                    finishBorrow(home, voucherId, userId, orderId, true);
+                } catch (Exception e) {
+                    //借出分片已记录借给了该订单,对账任务会补发订单消息
+                    log.warn("秒杀券{}订单{}的订单消息发送失败,由对账任务补发", voucherId, orderId, e);
+                }
+                return SUCCESS;
+            }
+            empty.add(shard);
+        }
+        //3.所有分片都没有库存,删除占位(允许该用户在补货后重新抢购)
+        finishBorrow(home, voucherId, userId, orderId, false);
+        return SOLD_OUT;
+    }
+
+    /**
+     * 结束一次借库存:删除借库存记录,借到库存时发送订单消息,否则删除占位(调用方与对账任务只有一方生效)
+     */
+    private void finishBorrow(int home, Long voucherId, Long userId, Long orderId, boolean borrowed) {
+        templateFor(home).execute(BORROW_FINISH_SCRIPT,
+                Arrays.asList(borrowKey(home), orderKey(voucherId, home), streamKey(home)),
+                orderId.toString(), userId.toString(), voucherId.toString(), borrowed ? "1" : "0");
+    }
+
+    /**
+     * 借库存对账:调用方在借库存过程中宕机或超时,借库存记录超过 borrowTimeoutMillis 仍未删除时
+     * 1.依次在其他分片上查询是否已借给该订单,没有借出的分片写入取消标记(之后不会再借给该订单)
+     * 2.已借到库存则补发订单消息,否则删除占位
+     * 多个节点同时对账时,由 seckillBorrowFinish.lua 删除借库存记录保证只处理一次
+     */
+    @Scheduled(initialDelayString = "${hmdp.seckill.borrow-timeout-millis:30000}", fixedDelayString = "${hmdp.seckill.borrow-timeout-millis:30000}")
+    public void reconcileBorrows() {
+        for (int home = 0; home < defaultShards; home++) {
+            try {
+                reconcileBorrows(home);
+            } catch (Exception e) {
+                log.warn("分片{}的借库存对账失败", home, e);
+            }
+        }
+    }
+
+    private void reconcileBorrows(int home) {
+        StringRedisTemplate template = templateFor(home);
+        Map<Object, Object> borrows = template.opsForHash().entries(borrowKey(home));
+        if(borrows.isEmpty()) {
+            return;
+        }
+        //按Redis服务器时间判断超时(记录时间由Lua脚本按服务器时间写入)
+        Long now = template.execute((RedisCallback<Long>) connection -> connection.time());
+        if(now == null) {
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : borrows.entrySet()) {
+            String[] value = entry.getValue().toString().split(",");
+            if(now - Long.parseLong(value[2]) < borrowTimeoutMillis) {
+                continue;
+            }
+            Long orderId = Long.valueOf(entry.getKey().toString());
+            Long voucherId = Long.valueOf(value[0]);
+            Long userId = Long.valueOf(value[1]);
+            //1.查询各分片是否已借出,没有借出的写入取消标记
+            boolean borrowed = false;
+            int shards = shardsOf(voucherId);
+            for (int k = 1; k < shards && !borrowed; k++) {
+                int shard = (home + k) % shards;
+                Long r = templateFor(shard).execute(BORROW_CANCEL_SCRIPT,
+                        Collections.singletonList(borrowedKey(voucherId, shard)),
+                        orderId.toString(), String.valueOf(RedisConstants.SECKILL_BORROWED_TTL));
+                borrowed = r != null && r == 1;
+            }
+            //2.补发订单消息或删除占位
+            finishBorrow(home, voucherId, userId, orderId, borrowed);
+            log.warn("秒杀券{}订单{}的借库存未完成,对账结果:{}", voucherId, orderId, borrowed ? "补发订单消息" : "删除占位");
+        }
+    }
+
+    /**
+     * 优惠券的库存分片数,非秒杀券返回0
+     */
+    public int shardsOf(Long voucherId) {
+        Integer shards = shardCounts.get(voucherId);
+        if(shards != null) {
+            return shards;
+        }
+        String value = templateFor(0).opsForValue().get(RedisConstants.SECKILL_SHARDS_KEY + voucherId);
+        if(value == null) {
+            return 0;
+        }
+        shards = Integer.parseInt(value);
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    /**
+     * 用户的主分片
+     */
+    public static int homeShard(Long userId, int shards) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) shards);
+    }
+
+    public static String stockKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_STOCK_KEY + "{" + shard + "}:" + voucherId;
+    }
+
+    public static String orderKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_ORDER_KEY + "{" + shard + "}:" + voucherId;
+    }
+
+    public static String windowKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_WINDOW_KEY + "{" + shard + "}:" + voucherId;
+    }
+
+    public static String borrowKey(int shard) {
+        return RedisConstants.SECKILL_BORROW_KEY + "{" + shard + "}";
+    }
+
+    public static String borrowedKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_BORROWED_KEY + "{" + shard + "}:" + voucherId;
+    }
+
+    public static String streamKey(int shard) {
+        return RedisConstants.SECKILL_STREAM_KEY + "{" + shard + "}";
+    }
+
+    /**
+     * 创建订单消息队列的消费者组(队列不存在时自动创建)
+     */
+    public void createGroup(int shard) {
+        byte[] key = streamKey(shard).getBytes(StandardCharsets.UTF_8);
+        try {
+            templateFor(shard).execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(key, RedisConstants.SECKILL_STREAM_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            //BUSYGROUP:消费者组已存在
+            log.debug("消费者组已存在:{}", streamKey(shard));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hmdp.utils.seckill;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.cache.SingleFlight;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-01:15
+ * @Description: 秒杀券元数据(时间窗口)
+ * 1.创建秒杀券时时间窗口写入Redis的每个库存分片,由秒杀Lua脚本按服务器时间原子校验
+ * 2.每个节点在本地保存时间窗口的不可变快照,未开始/已结束的请求直接在本地拒绝
+ * 3.本地没有快照时依次从Redis、数据库加载(同一秒杀券只加载一次);定时预热即将开始的秒杀券,
+ *   预热后一次正常的秒杀请求只访问一次Redis
+ * 4.创建秒杀券和预热接口发布时间窗口后广播,所有节点从Redis刷新本地快照(包括之前缓存了"不是秒杀券"的节点)
+ * 5.本地快照数量有上限(LRU),过期后重新从Redis加载;"不是秒杀券"只缓存很短的时间,防止扫描不存在的id占满本地缓存
+ */
+@Slf4j
+@Component
+public class SeckillVoucherMeta implements MessageListener {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private SeckillLegacyMigration seckillLegacyMigration;
+
+    @Value("${hmdp.seckill.preload-ahead-minutes:30}")
+    private long preloadAheadMinutes;
+
+    //优惠券id -> 时间窗口快照
+    private final Cache<Long, SeckillWindow> windows = CacheUtil.newLRUCache(RedisConstants.SECKILL_WINDOW_LOCAL_SIZE,
+            TimeUnit.MINUTES.toMillis(RedisConstants.SECKILL_WINDOW_LOCAL_TTL));
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_PRELOAD_CHANNEL));
+    }
+
+    /**
+     * 查询秒杀时间窗口
+     * @param voucherId 优惠券id
+     * @return 时间窗口;不是秒杀券或库存未初始化时返回null
+     */
+    public SeckillWindow get(Long voucherId) {
+        SeckillWindow window = windows.get(voucherId, false);
+        if(window == null) {
+            window = singleFlight.execute(voucherId.toString(), () -> load(voucherId));
+        }
+        return window == SeckillWindow.NONE ? null : window;
+    }
+
+    /**
+     * 发布秒杀时间窗口(写入Redis各分片和本地快照)并广播,库存需已初始化
+     * @param seckillVoucher 秒杀券
+     */
+    public SeckillWindow publish(SeckillVoucher seckillVoucher) {
+        SeckillWindow window = new SeckillWindow(toMillis(seckillVoucher.getBeginTime()), toMillis(seckillVoucher.getEndTime()));
+        seckillStockRouter.setWindow(seckillVoucher.getVoucherId(), window.getBeginMillis(), window.getEndMillis());
+        windows.put(seckillVoucher.getVoucherId(), window);
+        //通知其他节点从Redis刷新本地快照(覆盖创建前查询时缓存的"不是秒杀券")
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_PRELOAD_CHANNEL, seckillVoucher.getVoucherId().toString());
+        return window;
+    }
+
+    /**
+     * 预热秒杀券:从数据库重新发布时间窗口(库存未初始化时先迁移旧版本的单key库存,没有旧数据再按数据库库存初始化),
+     * 并通知所有节点刷新本地快照
+     * @param voucherId 优惠券id
+     * @return 时间窗口;不是秒杀券时返回null
+     */
+    public SeckillWindow preload(Long voucherId) {
+        SeckillVoucher seckillVoucher = seckillVoucherMapper.selectById(voucherId);
+        if(seckillVoucher == null) {
+            return null;
+        }
+        if(seckillStockRouter.shardsOf(voucherId) == 0 && !seckillLegacyMigration.migrateVoucher(voucherId)) {
+            seckillStockRouter.initStock(voucherId, seckillVoucher.getStock());
+        }
+        return publish(seckillVoucher);
+    }
+
+    /**
+     * 定时预热即将开始和正在进行的秒杀券
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.preload-interval:60000}")
+    public void preloadUpcoming() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SeckillVoucher> upcoming = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                .select("voucher_id")
+                .le("begin_time", now.plusMinutes(preloadAheadMinutes))
+                .ge("end_time", now));
+        for (SeckillVoucher seckillVoucher : upcoming) {
+            get(seckillVoucher.getVoucherId());
+        }
+    }
+
+    /**
+     * 其他节点预热了秒杀券,从Redis刷新本地快照
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        SeckillWindow window = loadFromRedis(voucherId);
+        if(window != null) {
+            windows.put(voucherId, window);
+        }
+    }
+
+    private SeckillWindow load(Long voucherId) {
+        SeckillWindow window = loadFromRedis(voucherId);
+        if(window == null) {
+            window = loadFromDb(voucherId);
+        }
+        if(window == SeckillWindow.NONE) {
+            windows.put(voucherId, window, TimeUnit.SECONDS.toMillis(RedisConstants.SECKILL_WINDOW_NONE_TTL));
+        } else {
+            windows.put(voucherId, window);
+        }
+        return window;
+    }
+
+    private SeckillWindow loadFromRedis(Long voucherId) {
+        long[] window = seckillStockRouter.getWindow(voucherId);
+        return window == null ? null : new SeckillWindow(window[0], window[1]);
+    }
+
+    /**
+     * Redis中没有时间窗口(创建于时间窗口写入Redis之前的秒杀券),从数据库加载并写入Redis(旧版本的单key库存先迁移)
+     */
+    private SeckillWindow loadFromDb(Long voucherId) {
+        SeckillVoucher seckillVoucher = seckillVoucherMapper.selectById(voucherId);
+        if(seckillVoucher == null || (seckillStockRouter.shardsOf(voucherId) == 0 && !seckillLegacyMigration.migrateVoucher(voucherId))) {
+            return SeckillWindow.NONE;
+        }
+        log.info("从数据库加载秒杀券{}的时间窗口", voucherId);
+        return publish(seckillVoucher);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
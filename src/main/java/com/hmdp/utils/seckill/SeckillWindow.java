@@ -0,0 +1,36 @@
+package com.hmdp.utils.seckill;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-01:10
+ * @Description: 秒杀时间窗口的本地快照(不可变,更新时整体替换)
+ */
+public final class SeckillWindow {
+
+    //不是秒杀券(本地缓存,避免重复查询数据库)
+    static final SeckillWindow NONE = new SeckillWindow(-1, -1);
+
+    private final long beginMillis;
+    private final long endMillis;
+
+    public SeckillWindow(long beginMillis, long endMillis) {
+        this.beginMillis = beginMillis;
+        this.endMillis = endMillis;
+    }
+
+    public long getBeginMillis() {
+        return beginMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public boolean notStarted(long now) {
+        return now < beginMillis;
+    }
+
+    public boolean ended(long now) {
+        return now > endMillis;
+    }
+}
@@ -0,0 +1,13 @@
+-- ----------------------------
+-- tb_voucher_order 增加 (user_id, voucher_id) 唯一索引
+-- 一人一单由唯一索引保证,订单消息重复投递时 INSERT ... ON DUPLICATE KEY UPDATE 直接忽略,不需要先 SELECT COUNT(*) 全表扫描
+-- ----------------------------
+
+-- 1.检查是否存在重复订单(有结果时需先人工处理,否则创建唯一索引失败)
+SELECT user_id, voucher_id, COUNT(*) AS orders
+FROM tb_voucher_order
+GROUP BY user_id, voucher_id
+HAVING COUNT(*) > 1;
+
+-- 2.创建唯一索引(大表建议在低峰期执行,或使用 pt-online-schema-change / gh-ost)
+ALTER TABLE `tb_voucher_order` ADD UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE;
@@ -0,0 +1,16 @@
+-- ----------------------------
+-- tb_follow 增加关注关系索引
+-- idx_follow_user:按被关注用户查询粉丝(feed流推送时按 user_id 键集分页、统计粉丝数量),覆盖索引不回表
+-- uk_user_follow:查询/取消关注(WHERE user_id = ? AND follow_user_id = ?),同时防止重复关注
+-- ----------------------------
+
+-- 1.检查是否存在重复关注(有结果时需先删除重复行,否则创建唯一索引失败)
+SELECT user_id, follow_user_id, COUNT(*) AS follows
+FROM tb_follow
+GROUP BY user_id, follow_user_id
+HAVING COUNT(*) > 1;
+
+-- 2.创建索引(大表建议在低峰期执行,或使用 pt-online-schema-change / gh-ost)
+ALTER TABLE `tb_follow`
+    ADD INDEX `idx_follow_user`(`follow_user_id`, `user_id`) USING BTREE,
+    ADD UNIQUE INDEX `uk_user_follow`(`user_id`, `follow_user_id`) USING BTREE;
@@ -0,0 +1,13 @@
+-- ----------------------------
+-- 游标分页索引
+-- idx_user_id:/blog/of/user/cursor、/blog/of/me/cursor(WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT n)
+-- idx_type_id:/shop/of/type/cursor(WHERE type_id = ? AND id > ? ORDER BY id LIMIT n),替换原 foreign_key_type(type_id)
+-- 按索引定位后顺序读取n+1行,不需要COUNT(*)和跳过前面的行
+-- ----------------------------
+
+-- 大表建议在低峰期执行,或使用 pt-online-schema-change / gh-ost
+ALTER TABLE `tb_blog` ADD INDEX `idx_user_id`(`user_id`, `id`) USING BTREE;
+
+ALTER TABLE `tb_shop`
+    ADD INDEX `idx_type_id`(`type_id`, `id`) USING BTREE,
+    DROP INDEX `foreign_key_type`;
@@ -0,0 +1,25 @@
+--该Lua脚本用来按点赞时间增加/扣除博客热度--
+--热度排行和基准时间使用相同的hash tag {blog:hot},集群模式下位于同一个slot--
+
+-- 1.参数列表
+-- 1.1.博客id
+local blogId = ARGV[1]
+-- 1.2.点赞时间(毫秒)
+local time = tonumber(ARGV[2])
+-- 1.3.1为增加热度,-1为扣除热度
+local sign = tonumber(ARGV[3])
+-- 1.4.热度半衰期(毫秒)
+local halfLife = tonumber(ARGV[4])
+
+-- 2.数据key
+-- 2.1.博客热度排行 zset
+local hotKey = KEYS[1]
+-- 2.2.热度计算的基准时间,不存在说明排行榜尚未初始化(初始化时会从数据库全量计算)
+local epoch = redis.call('get', KEYS[2])
+
+-- 3.脚本业务:越晚的点赞权重越大,每经过一个半衰期权重翻倍(等价于之前的点赞热度减半)
+if(not epoch) then
+    return 0
+end
+redis.call('zincrby', hotKey, sign * math.pow(2, (time - tonumber(epoch)) / halfLife), blogId)
+return 1
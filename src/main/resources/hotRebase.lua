@@ -0,0 +1,28 @@
+--该Lua脚本用来平移博客热度的基准时间,防止热度权重无限增大--
+
+-- 1.参数列表
+-- 1.1.新的基准时间(毫秒)
+local newEpoch = tonumber(ARGV[1])
+-- 1.2.热度半衰期(毫秒)
+local halfLife = tonumber(ARGV[2])
+-- 1.3.排行榜保留的博客数量
+local maxSize = tonumber(ARGV[3])
+
+-- 2.数据key
+-- 2.1.博客热度排行 zset
+local hotKey = KEYS[1]
+-- 2.2.热度计算的基准时间
+local epochKey = KEYS[2]
+
+-- 3.脚本业务
+local epoch = redis.call('get', epochKey)
+if(not epoch) then
+    return 0
+end
+-- 3.1.所有热度同比例缩小,排名不变 ZUNIONSTORE hotKey 1 hotKey WEIGHTS factor
+local factor = math.pow(2, (tonumber(epoch) - newEpoch) / halfLife)
+redis.call('zunionstore', hotKey, 1, hotKey, 'WEIGHTS', factor)
+redis.call('set', epochKey, ARGV[1])
+-- 3.2.只保留热度最高的maxSize个博客
+redis.call('zremrangebyrank', hotKey, 0, -maxSize - 1)
+return 1
@@ -0,0 +1,9 @@
+-- KEYS[1] : 时间戳下限的key  ARGV[1] : 新的时间戳下限
+
+-- 只保留较大的值,过期的心跳或释放时写入的较小值不会降低已记录的下限
+local last = tonumber(redis.call('get', KEYS[1]) or '0')
+if(tonumber(ARGV[1]) > last) then
+    redis.call('set', KEYS[1], ARGV[1])
+    return 1
+end
+return 0
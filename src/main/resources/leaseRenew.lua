@@ -0,0 +1,8 @@
+-- KEYS[1] : 租约的key  ARGV[1] : 当前持有者标识  ARGV[2] : 租约时长(毫秒)
+
+-- 判断租约是否仍由当前持有者持有
+if(redis.call('get', KEYS[1]) == ARGV[1]) then
+    -- 续期
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,23 @@
+--该Lua脚本用来原子地完成点赞/取消点赞(只访问博客的点赞集合,集群模式下不会跨slot)--
+--用户最近点赞记录、点赞数增量、热度排行位于其他slot,由调用方在脚本执行后分别更新--
+
+-- 1.参数列表
+-- 1.1.用户id
+local userId = ARGV[1]
+-- 1.2.当前时间戳(毫秒)
+local now = ARGV[2]
+
+-- 2.数据key
+-- 2.1.博客的点赞用户集合 blog:liked:{blogId}
+local likedKey = KEYS[1]
+
+-- 3.脚本业务
+-- 3.1.已点赞过,取消点赞,返回 {0, 当初的点赞时间}(用于扣除当初点赞时加上的热度)
+local likedAt = redis.call('zscore', likedKey, userId)
+if(likedAt) then
+    redis.call('zrem', likedKey, userId)
+    return {0, tonumber(likedAt)}
+end
+-- 3.2.未点赞过,点赞,返回 {1, 点赞时间}
+redis.call('zadd', likedKey, now, userId)
+return {1, tonumber(now)}
@@ -0,0 +1,12 @@
+-- KEYS[1] : 锁的key  ARGV[1] : 当前线程的标识  ARGV[2] : 锁的过期时间(毫秒)
+-- 锁用hash存储:field为线程标识,value为重入次数
+
+-- 锁不存在,或者锁由当前线程持有(重入)
+if(redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    -- 重入次数+1,并重置过期时间
+    redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return nil
+end
+-- 获取锁失败,返回锁的剩余时间,用于限制等待时长
+return redis.call('pttl', KEYS[1])
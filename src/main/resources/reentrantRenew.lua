@@ -0,0 +1,7 @@
+-- KEYS[1] : 锁的key  ARGV[1] : 当前线程的标识  ARGV[2] : 锁的过期时间(毫秒)
+
+-- 锁仍由当前线程持有时续期
+if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
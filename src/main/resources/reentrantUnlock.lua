@@ -0,0 +1,18 @@
+-- KEYS[1] : 锁的key  ARGV[1] : 当前线程的标识  ARGV[2] : 锁的过期时间(毫秒)  ARGV[3] : 锁释放通知的频道
+-- (频道不是key,通过ARGV传入,集群模式下脚本只访问锁的key所在的slot)
+
+-- 锁不是当前线程持有(已过期或被其他线程持有)
+if(redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+    return -1
+end
+-- 重入次数-1
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if(count > 0) then
+    -- 仍有重入未释放,重置过期时间
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 0
+end
+-- 释放锁,并通知等待该锁的线程
+redis.call('del', KEYS[1])
+redis.call('publish', ARGV[3], KEYS[1])
+return 1
@@ -1,4 +1,4 @@
---该Lua脚本用来判断用户是否具有秒杀资格--
+--该Lua脚本用来判断用户是否具有秒杀资格(在用户的主分片上执行,所有key位于同一个slot)--
 
 -- 1.参数列表
 -- 1.1.优惠券id
@@ -6,29 +6,55 @@ local voucherId = ARGV[1]
 -- 1.2.用户id
 local userId = ARGV[2]
 -- 1.3.订单id
- local orderId = ARGV[3]
+local orderId = ARGV[3]
 
 -- 2.数据key
--- 2.1.库存key
-local stockKey = 'seckill:stock:' .. voucherId
--- 2.2.订单key
-local orderKey = 'seckill:order:' .. voucherId
+-- 2.1.库存分片key seckill:stock:{shard}:voucherId
+local stockKey = KEYS[1]
+-- 2.2.订单分片key seckill:order:{shard}:voucherId(同一用户永远落在同一个分片,保证一人一单)
+local orderKey = KEYS[2]
+-- 2.3.订单消息队列 stream.orders:{shard}
+local streamKey = KEYS[3]
+-- 2.4.秒杀时间窗口 seckill:window:{shard}:voucherId(begin/end,毫秒时间戳)
+local windowKey = KEYS[4]
+-- 2.5.借库存记录 seckill:borrow:{shard}(订单id -> 优惠券id,用户id,记录时间)
+local borrowKey = KEYS[5]
 
 -- 3.脚本业务
--- 3.1.判断库存是否充足 get stockKey
-if(tonumber(redis.call('get', stockKey)) <= 0) then
-    -- 3.2.库存不足，返回1
-    return 1
+-- 3.0.判断秒杀时间窗口(使用Redis服务器时间,各节点时钟不一致也不影响)
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if(not window[1] or not window[2]) then
+    -- 时间窗口不存在(未预热),返回4
+    return 4
 end
--- 3.2.判断用户是否下单(一人一单) SISMEMBER orderKey userId
+-- 脚本中读取了服务器时间,之后的写命令按效果复制
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if(now < tonumber(window[1])) then
+    -- 秒杀还未开始,返回5
+    return 5
+end
+if(now > tonumber(window[2])) then
+    -- 秒杀已结束,返回6
+    return 6
+end
+-- 3.1.判断用户是否下单(一人一单) SISMEMBER orderKey userId
 if(redis.call('sismember', orderKey, userId) == 1) then
-    -- 3.3.存在，说明是重复下单，返回2
+    -- 3.2.存在，说明是重复下单，返回2
     return 2
 end
--- 3.4.扣库存 incrby stockKey -1
-redis.call('incrby', stockKey, -1)
--- 3.5.下单（保存用户）sadd orderKey userId
+-- 3.3.下单（保存用户）sadd orderKey userId
 redis.call('sadd', orderKey, userId)
--- 3.6.发送消息到队列中,xadd stream.orders * k1 v1 k2 v2 ...
-redis.call('xadd','stream.orders','*','userId',userId,'voucherId',voucherId,'id',orderId)
-return 0
\ No newline at end of file
+-- 3.4.判断主分片库存是否充足 get stockKey
+if(tonumber(redis.call('get', stockKey) or '0') <= 0) then
+    -- 3.5.主分片库存不足,保留占位并写入借库存记录(与占位原子写入),返回3,由调用方向其他分片借库存
+    -- 调用方宕机时,由对账任务根据借库存记录补发订单消息或删除占位
+    redis.call('hset', borrowKey, orderId, voucherId .. ',' .. userId .. ',' .. now)
+    return 3
+end
+-- 3.6.扣库存 incrby stockKey -1
+redis.call('incrby', stockKey, -1)
+-- 3.7.发送消息到队列中,xadd stream.orders:{shard} * k1 v1 k2 v2 ...
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+return 0
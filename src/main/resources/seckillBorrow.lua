@@ -0,0 +1,40 @@
+--该Lua脚本用来在主分片库存不足时,从其他分片借库存(用户已在主分片上占位,一人一单由主分片保证)--
+--订单消息由调用方发送到用户主分片的消息队列,同一用户的订单消息始终在同一个队列中,保证按用户有序--
+--借到库存时在该分片记录订单id,对账任务据此判断借库存是否已经发生--
+
+-- 1.参数列表
+-- 1.1.订单id
+local orderId = ARGV[1]
+-- 1.2.借库存记录的过期时间(秒)
+local ttl = ARGV[2]
+
+-- 2.数据key
+-- 2.1.库存分片key seckill:stock:{shard}:voucherId
+local stockKey = KEYS[1]
+-- 2.2.秒杀时间窗口 seckill:window:{shard}:voucherId
+local windowKey = KEYS[2]
+-- 2.3.已借出记录 seckill:borrowed:{shard}:voucherId(订单id -> 1已借出/0已被对账任务取消)
+local borrowedKey = KEYS[3]
+
+-- 3.脚本业务
+-- 3.1.对账任务已取消该订单的借库存(调用方超时),不再借出
+if(redis.call('hexists', borrowedKey, orderId) == 1) then
+    return 1
+end
+-- 3.2.借库存时秒杀可能刚好结束,同样按服务器时间判断,已结束按库存不足处理
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if(not window[2] or now > tonumber(window[2])) then
+    return 1
+end
+-- 3.3.判断该分片库存是否充足,不足返回1
+if(tonumber(redis.call('get', stockKey) or '0') <= 0) then
+    return 1
+end
+-- 3.4.扣库存,并记录借给了该订单
+redis.call('incrby', stockKey, -1)
+redis.call('hset', borrowedKey, orderId, '1')
+redis.call('expire', borrowedKey, ttl)
+return 0
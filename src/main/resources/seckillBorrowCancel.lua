@@ -0,0 +1,11 @@
+--该Lua脚本由对账任务在借出分片上执行:调用方超时未完成借库存时,判断该订单是否已借到库存,没有借到则禁止之后再借出--
+
+-- KEYS[1] : 已借出记录 seckill:borrowed:{shard}:voucherId  ARGV[1] : 订单id  ARGV[2] : 记录的过期时间(秒)
+
+-- 1.没有借出记录,写入取消标记(之后该订单的借库存脚本直接返回库存不足),返回0
+if(redis.call('hsetnx', KEYS[1], ARGV[1], '0') == 1) then
+    redis.call('expire', KEYS[1], ARGV[2])
+    return 0
+end
+-- 2.已有记录:1表示已借到库存,0表示已被取消
+return tonumber(redis.call('hget', KEYS[1], ARGV[1]))
@@ -0,0 +1,33 @@
+--该Lua脚本用来在用户的主分片上结束一次借库存(调用方和对账任务都可能执行,只有删除借库存记录成功的一方生效)--
+
+-- 1.参数列表
+-- 1.1.订单id
+local orderId = ARGV[1]
+-- 1.2.用户id
+local userId = ARGV[2]
+-- 1.3.优惠券id
+local voucherId = ARGV[3]
+-- 1.4.是否借到库存:1借到,发送订单消息;0没有借到,删除占位
+local borrowed = ARGV[4]
+
+-- 2.数据key
+-- 2.1.借库存记录 seckill:borrow:{shard}
+local borrowKey = KEYS[1]
+-- 2.2.订单分片key seckill:order:{shard}:voucherId
+local orderKey = KEYS[2]
+-- 2.3.订单消息队列 stream.orders:{shard}
+local streamKey = KEYS[3]
+
+-- 3.脚本业务
+-- 3.1.借库存记录已被删除,说明另一方已经处理,返回1
+if(redis.call('hdel', borrowKey, orderId) == 0) then
+    return 1
+end
+if(borrowed == '1') then
+    -- 3.2.借到库存,发送订单消息到主分片的消息队列
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+else
+    -- 3.3.所有分片都没有库存,删除占位(允许该用户在补货后重新抢购)
+    redis.call('srem', orderKey, userId)
+end
+return 0
@@ -0,0 +1,172 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.RedisData;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.codec.BlogCodec;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheEnvelope;
+import com.hmdp.utils.codec.ShopCodec;
+import com.hmdp.utils.codec.ShopTypeCodec;
+import com.hmdp.utils.codec.UserDTOCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-18-20:30
+ * @Description: 缓存序列化对比:Hutool JSON(当前逻辑过期写法,RedisData包装后两次解析) vs 二进制编解码
+ * 运行main方法,先输出每个key占用的字节数,再输出编码/解码的ns/op
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    private final ShopCodec shopCodec = new ShopCodec();
+    private final BlogCodec blogCodec = new BlogCodec();
+
+    private Shop shop;
+    private Blog blog;
+    private long expireAt;
+
+    private String shopJson;
+    private String blogJson;
+    private byte[] shopBinary;
+    private byte[] blogBinary;
+
+    @Setup
+    public void setUp() {
+        shop = sampleShop();
+        blog = sampleBlog();
+        expireAt = System.currentTimeMillis() + 60_000;
+        shopJson = JSONUtil.toJsonStr(wrap(shop));
+        blogJson = JSONUtil.toJsonStr(wrap(blog));
+        shopBinary = CacheEnvelope.encode(shopCodec, shop, expireAt);
+        blogBinary = CacheEnvelope.encode(blogCodec, blog, expireAt);
+    }
+
+    @Benchmark
+    public String shopJsonEncode() {
+        return JSONUtil.toJsonStr(wrap(shop));
+    }
+
+    @Benchmark
+    public Shop shopJsonDecode() {
+        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public byte[] shopBinaryEncode() {
+        return CacheEnvelope.encode(shopCodec, shop, expireAt);
+    }
+
+    @Benchmark
+    public Shop shopBinaryDecode() {
+        return CacheEnvelope.decode(shopCodec, shopBinary);
+    }
+
+    @Benchmark
+    public boolean shopJsonExpireCheck() {
+        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
+        return redisData.getExpireTime().isAfter(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public boolean shopBinaryExpireCheck() {
+        return CacheEnvelope.readExpireAt(shopBinary) > System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public String blogJsonEncode() {
+        return JSONUtil.toJsonStr(wrap(blog));
+    }
+
+    @Benchmark
+    public Blog blogJsonDecode() {
+        RedisData redisData = JSONUtil.toBean(blogJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Blog.class);
+    }
+
+    @Benchmark
+    public byte[] blogBinaryEncode() {
+        return CacheEnvelope.encode(blogCodec, blog, expireAt);
+    }
+
+    @Benchmark
+    public Blog blogBinaryDecode() {
+        return CacheEnvelope.decode(blogCodec, blogBinary);
+    }
+
+    private RedisData wrap(Object data) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(60));
+        return redisData;
+    }
+
+    private static Shop sampleShop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    private static Blog sampleBlog() {
+        return new Blog().setId(4L).setShopId(4L).setUserId(2L)
+                .setName("可可今天不吃肉").setIcon("/imgs/icons/kkjtbcr.jpg")
+                .setTitle("无尽浪漫的夜晚丨在万花丛中摇晃着红酒杯🍷品战斧牛排🥩")
+                .setImages("/imgs/blogs/7/14/4771fefb-1a87-4252-816c-9f7ec41ffa4a.jpg,/imgs/blogs/4/10/2f07e3c9-ddce-482d-9ea7-c21450f8d7cd.jpg")
+                .setContent("生活就是一半烟火·一半诗意<br/>手执烟火谋生活·心怀诗意以谋爱·<br/>当然<br/>男朋友给不了的浪漫要学会自己给🍒<br/>无法重来的一生·尽量快乐.")
+                .setLiked(1).setComments(104)
+                .setCreateTime(LocalDateTime.of(2021, 12, 28, 19, 50, 1))
+                .setUpdateTime(LocalDateTime.of(2022, 3, 10, 14, 26, 34));
+    }
+
+    private static UserDTO sampleUser() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("user_slxaxy2au9f3tanffaxr");
+        user.setIcon("/imgs/icons/user5-icon.png");
+        return user;
+    }
+
+    private static <T> void printSize(String name, CacheCodec<T> codec, T value) {
+        int json = JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8).length;
+        int binary = CacheEnvelope.encode(codec, value, 0L).length;
+        System.out.printf("%-10s json=%5d bytes  binary=%5d bytes  (%.0f%%)%n", name, json, binary, binary * 100.0 / json);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        //每个key占用的字节数
+        printSize("Shop", new ShopCodec(), sampleShop());
+        printSize("ShopType", new ShopTypeCodec(), new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(1)
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 20, 17, 47)).setUpdateTime(LocalDateTime.of(2021, 12, 23, 11, 24, 31)));
+        printSize("Blog", new BlogCodec(), sampleBlog());
+        printSize("UserDTO", new UserDTOCodec(), sampleUser());
+
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIDWorker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-03:40
+ * @Description: 全局ID生成吞吐量(HmDianPingApplicationTests.test2 的JMH版本)
+ * incr:每个ID一次INCR;segment:号段模式,一次INCRBY预留一段序列号;snowflake:雪花算法,只在租用workerId时访问Redis
+ * 运行前启动Redis,运行main方法(输出IDs/sec):-Dredis=127.0.0.1:6379 -Ddb=15
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisIDWorkerBenchmark {
+
+    @Param({RedisIDWorker.MODE_INCR, RedisIDWorker.MODE_SEGMENT, RedisIDWorker.MODE_SNOWFLAKE})
+    private String mode;
+
+    @Param({"1000"})
+    private int segmentStep;
+
+    private LettuceConnectionFactory factory;
+    private RedisIDWorker redisIDWorker;
+
+    @Setup
+    public void setUp() {
+        String[] hostPort = System.getProperty("redis", "127.0.0.1:6379").split(":");
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+        config.setDatabase(Integer.getInteger("db", 15));
+        factory = new LettuceConnectionFactory(config);
+        factory.afterPropertiesSet();
+        redisIDWorker = new RedisIDWorker(new StringRedisTemplate(factory));
+        redisIDWorker.setMode(mode);
+        redisIDWorker.setSegmentStep(segmentStep);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redisIDWorker.shutdown();
+        factory.destroy();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return redisIDWorker.nextId("bench");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RedisIDWorkerBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dredis=" + System.getProperty("redis", "127.0.0.1:6379"),
+                        "-Ddb=" + Integer.getInteger("db", 15))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,165 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.seckill.SeckillStockRouter;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-00:20
+ * @Description: 秒杀库存分片压测
+ * 每个Redis节点是单线程的,分片数为1时所有请求由一个节点处理;分片分布到多个节点后吞吐量应随分片数线性增长
+ * 运行前启动若干个独立的Redis实例(模拟集群中的多个节点,分片i落在第 i % 节点数 个节点上),运行main方法:
+ * -Dnodes=127.0.0.1:7000,127.0.0.1:7001,... -Ddb=15 -Dshards=1,2,4,8 -Dthreads=64 -Drequests=200000 -Dstock=100000 -Dusers=150000
+ * 每一轮结束后校验:成功数 = min(库存, 用户数),剩余库存不为负,每个用户最多一个订单
+ */
+public class SeckillShardLoadTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] nodes = System.getProperty("nodes", "127.0.0.1:6379").split(",");
+        int db = Integer.getInteger("db", 15);
+        int threads = Integer.getInteger("threads", 64);
+        int requests = Integer.getInteger("requests", 200000);
+        int stock = Integer.getInteger("stock", 100000);
+        int users = Integer.getInteger("users", 150000);
+
+        List<StringRedisTemplate> templates = new ArrayList<>();
+        List<LettuceConnectionFactory> factories = new ArrayList<>();
+        for (String node : nodes) {
+            String[] hostPort = node.split(":");
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+            config.setDatabase(db);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(config);
+            factory.afterPropertiesSet();
+            factories.add(factory);
+            templates.add(new StringRedisTemplate(factory));
+        }
+
+        System.out.printf("nodes=%d threads=%d requests=%d stock=%d users=%d%n", nodes.length, threads, requests, stock, users);
+        System.out.printf("%-8s %12s %10s %10s %10s %8s%n", "shards", "req/s", "success", "soldOut", "duplicate", "check");
+        for (String s : System.getProperty("shards", "1,2,4,8").split(",")) {
+            int shards = Integer.parseInt(s.trim());
+            SeckillStockRouter router = new SeckillStockRouter(templates.get(0)) {
+                @Override
+                protected StringRedisTemplate templateFor(int shard) {
+                    return templateOf(templates, shard);
+                }
+            };
+            router.setDefaultShards(shards);
+            runRound(templates, router, shards, threads, requests, stock, users);
+        }
+        factories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    private static void runRound(List<StringRedisTemplate> templates, SeckillStockRouter router, int shards, int threads, int requests, int stock, int users)
+            throws InterruptedException {
+        long voucherId = System.currentTimeMillis();
+        clearStreams(templates, shards);
+        router.initStock(voucherId, stock);
+        router.setWindow(voucherId, voucherId - 1000, voucherId + 3600 * 1000);
+
+        AtomicLong success = new AtomicLong();
+        AtomicLong soldOut = new AtomicLong();
+        AtomicLong duplicate = new AtomicLong();
+        AtomicLong orderId = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < requests / threads; i++) {
+                        long userId = ThreadLocalRandom.current().nextInt(users) + 1;
+                        int r = router.tryAcquire(voucherId, userId, orderId.incrementAndGet());
+                        if(r == SeckillStockRouter.SUCCESS) {
+                            success.incrementAndGet();
+                        } else if(r == SeckillStockRouter.SOLD_OUT) {
+                            soldOut.incrementAndGet();
+                        } else {
+                            duplicate.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        String check = verify(templates, voucherId, shards, stock, success.get());
+        System.out.printf("%-8d %12.0f %10d %10d %10d %8s%n", shards,
+                (double) (requests / threads * threads) / elapsed * 1e9, success.get(), soldOut.get(), duplicate.get(), check);
+        cleanUp(templates, voucherId, shards);
+    }
+
+    /**
+     * 校验没有超卖并且一人一单
+     */
+    private static String verify(List<StringRedisTemplate> templates, long voucherId, int shards, int stock, long success) {
+        long remaining = 0;
+        Set<String> buyers = new HashSet<>();
+        long orders = 0;
+        for (int i = 0; i < shards; i++) {
+            StringRedisTemplate template = templateOf(templates, i);
+            long shardStock = Long.parseLong(template.opsForValue().get(SeckillStockRouter.stockKey(voucherId, i)));
+            if(shardStock < 0) {
+                return "OVERSELL";
+            }
+            remaining += shardStock;
+            List<MapRecord<String, Object, Object>> records = template.opsForStream()
+                    .read(StreamOffset.fromStart(SeckillStockRouter.streamKey(i)));
+            if(records == null) {
+                continue;
+            }
+            for (MapRecord<String, Object, Object> record : records) {
+                if(String.valueOf(voucherId).equals(record.getValue().get("voucherId"))) {
+                    orders++;
+                    if(!buyers.add((String) record.getValue().get("userId"))) {
+                        return "DUPLICATE";
+                    }
+                }
+            }
+        }
+        if(remaining + success != stock || orders != success) {
+            return "MISMATCH";
+        }
+        return "OK";
+    }
+
+    private static StringRedisTemplate templateOf(List<StringRedisTemplate> templates, int shard) {
+        return templates.get(shard % templates.size());
+    }
+
+    private static void clearStreams(List<StringRedisTemplate> templates, int shards) {
+        for (int i = 0; i < shards; i++) {
+            templateOf(templates, i).delete(SeckillStockRouter.streamKey(i));
+        }
+    }
+
+    private static void cleanUp(List<StringRedisTemplate> templates, long voucherId, int shards) {
+        for (int i = 0; i < shards; i++) {
+            StringRedisTemplate template = templateOf(templates, i);
+            template.delete(SeckillStockRouter.stockKey(voucherId, i));
+            template.delete(SeckillStockRouter.orderKey(voucherId, i));
+            template.delete(SeckillStockRouter.windowKey(voucherId, i));
+            template.delete(SeckillStockRouter.streamKey(i));
+        }
+        templateOf(templates, 0).delete(RedisConstants.SECKILL_SHARDS_KEY + voucherId);
+    }
+}
@@ -0,0 +1,151 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.geo.ShopGrid;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-07:50
+ * @Description: 附近商铺查询耗时:进程内网格索引 vs Redis GEO
+ * 在约60km x 55km的范围内随机生成shops个商铺(同一类型),每次随机一个坐标查询半径5km内最近的一页商铺
+ * local:ShopGrid(与 LocalShopGeoIndex 相同);redis:GEORADIUS ... WITHDIST ASC COUNT(与 ShopGeoIndex 相同)
+ * setUp时输出内存占用:local为构建前后的堆内存差,redis为 MEMORY USAGE
+ * 运行前启动Redis,运行main方法:-Dredis=127.0.0.1:6379 -Ddb=15
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ShopGeoBenchmark {
+
+    private static final String KEY = "bench:shop:geo";
+    private static final double MIN_X = 120.0, MAX_X = 120.6, MIN_Y = 30.0, MAX_Y = 30.5;
+    private static final double RADIUS_METERS = 5000;
+
+    @Param({"local", "redis"})
+    private String mode;
+
+    @Param({"1000000"})
+    private int shops;
+
+    //一页商铺数量(SystemConstants.DEFAULT_PAGE_SIZE)
+    @Param({"5"})
+    private int limit;
+
+    private ShopGrid grid;
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Setup
+    public void setUp() {
+        //1.生成商铺坐标
+        Random random = new Random(1);
+        long[] ids = new long[shops];
+        double[] xs = new double[shops];
+        double[] ys = new double[shops];
+        for (int i = 0; i < shops; i++) {
+            ids[i] = i + 1;
+            xs[i] = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+            ys[i] = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+        }
+        if("local".equals(mode)) {
+            //2.构建网格索引,按每页1000个写入(与加载时相同)
+            long before = usedMemory();
+            grid = new ShopGrid(0.01);
+            for (int from = 0; from < shops; from += 1000) {
+                int to = Math.min(from + 1000, shops);
+                grid.addAll(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(xs, from, to),
+                        Arrays.copyOfRange(ys, from, to), to - from);
+            }
+            printMemory("local", usedMemory() - before);
+            return;
+        }
+        //3.写入Redis GEO,每1000个一次pipeline
+        String[] hostPort = System.getProperty("redis", "127.0.0.1:6379").split(":");
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+        config.setDatabase(Integer.getInteger("db", 15));
+        factory = new LettuceConnectionFactory(config);
+        factory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(factory);
+        stringRedisTemplate.delete(KEY);
+        byte[] key = KEY.getBytes(StandardCharsets.UTF_8);
+        for (int from = 0; from < shops; from += 1000) {
+            int start = from;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = start; i < Math.min(start + 1000, shops); i++) {
+                    connection.geoAdd(key, new Point(xs[i], ys[i]), String.valueOf(ids[i]).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        }
+        Object usage = stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.UTF_8), key,
+                "SAMPLES".getBytes(StandardCharsets.UTF_8), "0".getBytes(StandardCharsets.UTF_8)));
+        printMemory("redis", ((Number) usage).longValue());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(factory != null) {
+            stringRedisTemplate.delete(KEY);
+            factory.destroy();
+        }
+    }
+
+    @Benchmark
+    public Object nearby() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double x = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+        double y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+        if(grid != null) {
+            return grid.search(x, y, RADIUS_METERS, limit);
+        }
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(KEY,
+                new Circle(new Point(x, y), new Distance(RADIUS_METERS, RedisGeoCommands.DistanceUnit.METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(limit));
+        return results;
+    }
+
+    private static long usedMemory() {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void printMemory(String name, long bytes) {
+        System.out.printf("%n[%s] %d shops: %.1f MB, %.1f bytes/shop, %.1f MB per million shops%n",
+                name, shops, bytes / 1048576.0, (double) bytes / shops, bytes / 1048576.0 * 1_000_000 / shops);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShopGeoBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dredis=" + System.getProperty("redis", "127.0.0.1:6379"),
+                        "-Ddb=" + Integer.getInteger("db", 15))
+                .build();
+        new Runner(options).run();
+    }
+}
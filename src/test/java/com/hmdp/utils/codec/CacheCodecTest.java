@@ -0,0 +1,121 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.CacheClient;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-09:10
+ * @Description: 二进制缓存编解码器的往返测试:全部字段、空字段、逻辑过期头部、未知结构版本
+ */
+class CacheCodecTest {
+
+    private final CacheCodecRegistry registry = new CacheCodecRegistry(Arrays.asList(
+            new ShopCodec(), new ShopTypeCodec(), new BlogCodec(), new UserDTOCodec()));
+    //deserialize只依赖编解码器注册表
+    private final CacheClient cacheClient = new CacheClient(null, null, null, registry, null, null, null);
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 19, 9, 10, 11, 123_000_000);
+
+    @Test
+    void shopRoundTrip() {
+        Shop shop = new Shop().setId(1L).setName("茶餐厅").setTypeId(2L).setImages("a.jpg,b.jpg").setArea("大关")
+                .setAddress("金华路188号").setX(120.149192).setY(30.316078).setAvgPrice(80L).setSold(4215)
+                .setComments(3035).setScore(37).setOpenHours("10:00-22:00").setCreateTime(TIME).setUpdateTime(TIME);
+        assertEquals(shop, roundTrip(shop, Shop.class));
+    }
+
+    @Test
+    void shopTypeRoundTrip() {
+        ShopType shopType = new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(1)
+                .setCreateTime(TIME).setUpdateTime(TIME);
+        assertEquals(shopType, roundTrip(shopType, ShopType.class));
+    }
+
+    @Test
+    void blogRoundTrip() {
+        //博客内容超过65535字节(writeUTF的限制)
+        char[] content = new char[30000];
+        Arrays.fill(content, '字');
+        Blog blog = new Blog().setId(1L).setShopId(2L).setUserId(3L).setIcon("/icon.png").setName("小明")
+                .setTitle("标题").setImages("1.jpg").setContent(new String(content)).setLiked(10).setComments(2)
+                .setCreateTime(TIME).setUpdateTime(TIME);
+        assertEquals(blog, roundTrip(blog, Blog.class));
+    }
+
+    @Test
+    void userRoundTrip() {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("小鱼同学");
+        user.setIcon("");
+        UserDTO read = roundTrip(user, UserDTO.class);
+        assertEquals(user.getId(), read.getId());
+        assertEquals(user.getNickName(), read.getNickName());
+        assertEquals(user.getIcon(), read.getIcon());
+    }
+
+    @Test
+    void nullFields() {
+        assertEquals(new Shop(), roundTrip(new Shop(), Shop.class));
+        assertEquals(new ShopType(), roundTrip(new ShopType(), ShopType.class));
+        assertEquals(new Blog(), roundTrip(new Blog(), Blog.class));
+        UserDTO user = roundTrip(new UserDTO(), UserDTO.class);
+        assertNull(user.getId());
+        assertNull(user.getNickName());
+        assertNull(user.getIcon());
+    }
+
+    @Test
+    void logicalExpireHeader() {
+        Shop shop = new Shop().setId(1L).setName("茶餐厅");
+        long expireAt = 1792000000123L;
+        byte[] data = CacheEnvelope.encode(registry.get(Shop.class), shop, expireAt);
+        assertTrue(CacheEnvelope.isBinary(data));
+        assertEquals(expireAt, CacheEnvelope.readExpireAt(data));
+        assertEquals(shop, cacheClient.deserialize(data, Shop.class));
+        //不设置逻辑过期
+        assertEquals(0L, CacheEnvelope.readExpireAt(cacheClient.serialize(shop)));
+    }
+
+    @Test
+    void jsonIsNotBinary() {
+        Shop shop = new Shop().setId(1L).setName("茶餐厅");
+        byte[] json = JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+        assertFalse(CacheEnvelope.isBinary(json));
+        assertEquals(shop.getName(), cacheClient.deserialize(json, Shop.class).getName());
+    }
+
+    @Test
+    void unknownVersionIsMiss() {
+        byte[] data = cacheClient.serialize(new Shop().setId(1L));
+        //模拟新版本节点写入的数据
+        data[1] = (byte) (registry.get(Shop.class).version() + 1);
+        //CacheClient读取时捕获IllegalStateException并按未命中处理
+        assertThrows(IllegalStateException.class, () -> cacheClient.deserialize(data, Shop.class));
+    }
+
+    @Test
+    void truncatedDataIsMiss() {
+        byte[] data = cacheClient.serialize(new Shop().setId(1L).setName("茶餐厅"));
+        byte[] truncated = Arrays.copyOf(data, data.length - 3);
+        assertThrows(IllegalStateException.class, () -> cacheClient.deserialize(truncated, Shop.class));
+    }
+
+    private <T> T roundTrip(T value, Class<T> type) {
+        byte[] data = cacheClient.serialize(value);
+        assertTrue(CacheEnvelope.isBinary(data));
+        return cacheClient.deserialize(data, type);
+    }
+}
@@ -0,0 +1,212 @@
+package com.hmdp.utils.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-13:10
+ * @Description: 网格索引附近查询与暴力扫描(半正矢公式计算全部商铺的距离后排序)的结果对比:
+ * 随机坐标、格子边界上的坐标、高纬度、跨越0经线/赤道(负的格子序号)、更新和删除商铺
+ */
+class ShopGridTest {
+
+    private static final double CELL_DEGREES = 0.01;
+
+    @Test
+    void randomPoints() {
+        Shops shops = Shops.random(new Random(1), 20000, 120.0, 30.0, 0.5, 0.5);
+        ShopGrid grid = shops.grid();
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            double x = 120.0 + random.nextDouble() * 0.5;
+            double y = 30.0 + random.nextDouble() * 0.5;
+            assertSameAsBruteForce(grid, shops, x, y, 5000, 10);
+            assertSameAsBruteForce(grid, shops, x, y, 2000, 300);
+        }
+    }
+
+    @Test
+    void sparsePointsWithinLargeRadius() {
+        //半径内的商铺少于limit,需要扫描到半径边界
+        Shops shops = Shops.random(new Random(3), 300, 120.0, 30.0, 1.0, 1.0);
+        ShopGrid grid = shops.grid();
+        Random random = new Random(4);
+        for (int i = 0; i < 100; i++) {
+            assertSameAsBruteForce(grid, shops, 120.0 + random.nextDouble(), 30.0 + random.nextDouble(), 10000, 50);
+        }
+    }
+
+    @Test
+    void nearCellEdges() {
+        //商铺和查询点都在格子边界两侧(距离边界1e-9度)或正好在边界上
+        Shops shops = new Shops();
+        Random random = new Random(5);
+        long id = 1;
+        for (int cx = 0; cx < 20; cx++) {
+            for (int cy = 0; cy < 20; cy++) {
+                double x = 120.0 + cx * CELL_DEGREES;
+                double y = 30.0 + cy * CELL_DEGREES;
+                for (double dx : new double[]{-1e-9, 0, 1e-9}) {
+                    for (double dy : new double[]{-1e-9, 0, 1e-9}) {
+                        if(random.nextInt(3) == 0) {
+                            shops.add(id++, x + dx, y + dy);
+                        }
+                    }
+                }
+            }
+        }
+        ShopGrid grid = shops.grid();
+        for (int cx = 1; cx < 19; cx++) {
+            for (int cy = 1; cy < 19; cy += 3) {
+                double x = 120.0 + cx * CELL_DEGREES;
+                double y = 30.0 + cy * CELL_DEGREES;
+                assertSameAsBruteForce(grid, shops, x, y, 3000, 5);
+                assertSameAsBruteForce(grid, shops, x + 1e-9, y - 1e-9, 3000, 20);
+                assertSameAsBruteForce(grid, shops, x + CELL_DEGREES / 2, y, 3000, 20);
+            }
+        }
+    }
+
+    @Test
+    void highLatitude() {
+        //高纬度一个格子的东西宽度只有几百米,5公里半径需要向东西方向扫描更多圈
+        for (double latitude : new double[]{60.0, 75.0, 85.0, -80.0}) {
+            Shops shops = Shops.random(new Random(6), 5000, 10.0, latitude, 2.0, 0.2);
+            ShopGrid grid = shops.grid();
+            Random random = new Random(7);
+            for (int i = 0; i < 50; i++) {
+                double x = 10.0 + random.nextDouble() * 2.0;
+                double y = latitude + random.nextDouble() * 0.2;
+                assertSameAsBruteForce(grid, shops, x, y, 5000, 10);
+                assertSameAsBruteForce(grid, shops, x, y, 20000, 100);
+            }
+        }
+    }
+
+    @Test
+    void aroundOrigin() {
+        //格子序号为负数
+        Shops shops = Shops.random(new Random(8), 5000, -0.25, -0.25, 0.5, 0.5);
+        ShopGrid grid = shops.grid();
+        Random random = new Random(9);
+        for (int i = 0; i < 100; i++) {
+            assertSameAsBruteForce(grid, shops, random.nextDouble() * 0.5 - 0.25, random.nextDouble() * 0.5 - 0.25, 5000, 10);
+        }
+        assertSameAsBruteForce(grid, shops, 0, 0, 5000, 10);
+    }
+
+    @Test
+    void updateAndRemove() {
+        Shops shops = Shops.random(new Random(10), 2000, 120.0, 30.0, 0.2, 0.2);
+        ShopGrid grid = shops.grid();
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            int index = random.nextInt(shops.size());
+            grid.remove(shops.ids.get(index), shops.xs.get(index), shops.ys.get(index));
+            if(random.nextBoolean()) {
+                //移动到新坐标
+                double x = 120.0 + random.nextDouble() * 0.2;
+                double y = 30.0 + random.nextDouble() * 0.2;
+                grid.add(shops.ids.get(index), x, y);
+                shops.xs.set(index, x);
+                shops.ys.set(index, y);
+            } else {
+                shops.removeAt(index);
+            }
+        }
+        assertEquals(shops.size(), grid.size());
+        for (int i = 0; i < 100; i++) {
+            assertSameAsBruteForce(grid, shops, 120.0 + random.nextDouble() * 0.2, 30.0 + random.nextDouble() * 0.2, 3000, 10);
+        }
+    }
+
+    @Test
+    void duplicateAddUpdatesCoordinates() {
+        ShopGrid grid = new ShopGrid(CELL_DEGREES);
+        grid.add(1, 120.001, 30.001);
+        grid.add(1, 120.002, 30.002);
+        assertEquals(1, grid.size());
+        List<NearbyShop> nearby = grid.search(120.002, 30.002, 100, 10);
+        assertEquals(1, nearby.size());
+        assertEquals(0, nearby.get(0).getDistance(), 1e-6);
+    }
+
+    private static void assertSameAsBruteForce(ShopGrid grid, Shops shops, double x, double y, double radius, int limit) {
+        List<NearbyShop> expected = shops.bruteForce(x, y, radius, limit);
+        List<NearbyShop> actual = grid.search(x, y, radius, limit);
+        String point = "(" + x + "," + y + ") radius=" + radius + " limit=" + limit;
+        assertEquals(expected.size(), actual.size(), point);
+        for (int i = 0; i < expected.size(); i++) {
+            //距离相同的商铺顺序可能不同,逐个比较距离,并且第i个商铺的距离与暴力扫描一致
+            assertEquals(expected.get(i).getDistance(), actual.get(i).getDistance(), 1e-6, point + " #" + i);
+            int index = shops.ids.indexOf(actual.get(i).getShopId());
+            assertEquals(ShopGrid.distance(x, y, shops.xs.get(index), shops.ys.get(index)), actual.get(i).getDistance(), 1e-6, point);
+        }
+    }
+
+    /**
+     * 商铺坐标(暴力扫描的数据源)
+     */
+    private static class Shops {
+        private final List<Long> ids = new ArrayList<>();
+        private final List<Double> xs = new ArrayList<>();
+        private final List<Double> ys = new ArrayList<>();
+
+        static Shops random(Random random, int n, double minX, double minY, double width, double height) {
+            Shops shops = new Shops();
+            for (int i = 0; i < n; i++) {
+                shops.add(i + 1, minX + random.nextDouble() * width, minY + random.nextDouble() * height);
+            }
+            return shops;
+        }
+
+        void add(long id, double x, double y) {
+            ids.add(id);
+            xs.add(x);
+            ys.add(y);
+        }
+
+        void removeAt(int index) {
+            ids.remove(index);
+            xs.remove(index);
+            ys.remove(index);
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        ShopGrid grid() {
+            ShopGrid grid = new ShopGrid(CELL_DEGREES);
+            long[] idArray = new long[size()];
+            double[] xArray = new double[size()];
+            double[] yArray = new double[size()];
+            for (int i = 0; i < size(); i++) {
+                idArray[i] = ids.get(i);
+                xArray[i] = xs.get(i);
+                yArray[i] = ys.get(i);
+            }
+            grid.addAll(idArray, xArray, yArray, size());
+            return grid;
+        }
+
+        List<NearbyShop> bruteForce(double x, double y, double radius, int limit) {
+            List<NearbyShop> all = new ArrayList<>();
+            for (int i = 0; i < size(); i++) {
+                double distance = ShopGrid.distance(x, y, xs.get(i), ys.get(i));
+                if(distance <= radius) {
+                    all.add(new NearbyShop(ids.get(i), distance));
+                }
+            }
+            all.sort(Comparator.comparingDouble(NearbyShop::getDistance));
+            return all.subList(0, Math.min(limit, all.size()));
+        }
+    }
+}
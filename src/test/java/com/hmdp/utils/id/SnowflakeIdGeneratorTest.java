@@ -0,0 +1,165 @@
+package com.hmdp.utils.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: xuyuchao
+ * @Date: 2026-10-19-12:30
+ * @Description: 雪花算法ID生成测试(模拟时钟):ID结构、序列号用完借用下一秒、逻辑时间领先过多时等待、时钟回拨、继承上一个持有者的时间戳
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long BEGIN = 1640995200L;
+    private static final long SEQUENCE_SIZE = 1L << 22;
+
+    private final AtomicLong clock = new AtomicLong(BEGIN + 100);
+
+    @Test
+    void bitLayout() {
+        SnowflakeIdGenerator generator = generator(7, 0, 5);
+        long first = generator.nextId();
+        long second = generator.nextId();
+        assertTrue(first > 0);
+        assertEquals(100, timestamp(first));
+        assertEquals(1, (first >>> 31) & 1, "雪花标记");
+        assertEquals(7, (first >>> 22) & 0x1ff, "workerId");
+        assertEquals(0, sequence(first));
+        assertEquals(1, sequence(second));
+        //雪花标记位为1,与号段/INCR模式的ID(序列号小于2^31)不重复
+        assertTrue((first & 0xffffffffL) >= 1L << 31);
+    }
+
+    @Test
+    void newSecondResetsSequence() {
+        SnowflakeIdGenerator generator = generator(1, 0, 5);
+        generator.nextId();
+        generator.nextId();
+        clock.set(BEGIN + 101);
+        long id = generator.nextId();
+        assertEquals(101, timestamp(id));
+        assertEquals(0, sequence(id));
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextSecond() {
+        SnowflakeIdGenerator generator = generator(1, 0, 5);
+        long last = exhaust(generator, SEQUENCE_SIZE);
+        assertEquals(100, timestamp(last));
+        assertEquals(SEQUENCE_SIZE - 1, sequence(last));
+        long borrowed = generator.nextId();
+        assertEquals(101, timestamp(borrowed));
+        assertEquals(0, sequence(borrowed));
+        assertTrue(borrowed > last);
+    }
+
+    @Test
+    void waitsWhenLeadExceedsMaxDrift() throws InterruptedException {
+        SnowflakeIdGenerator generator = generator(1, 0, 1);
+        //第100秒用完后借用第101秒,第101秒也用完时逻辑时间领先2秒,超过容忍范围,等待时钟追上
+        long last = exhaust(generator, 2 * SEQUENCE_SIZE);
+        assertEquals(101, timestamp(last));
+        Thread ticker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            clock.set(BEGIN + 101);
+        });
+        ticker.start();
+        long id = generator.nextId();
+        ticker.join();
+        assertEquals(102, timestamp(id));
+        assertEquals(BEGIN + 101, clock.get());
+    }
+
+    @Test
+    void clockRollbackKeepsLastTimestamp() {
+        SnowflakeIdGenerator generator = generator(1, 0, 5);
+        long before = generator.nextId();
+        clock.set(BEGIN + 97);
+        long after = generator.nextId();
+        assertEquals(100, timestamp(after));
+        assertTrue(after > before);
+        //时钟恢复后继续递增
+        clock.set(BEGIN + 101);
+        assertTrue(generator.nextId() > after);
+    }
+
+    @Test
+    void clockRollbackBeyondMaxDriftThrows() {
+        SnowflakeIdGenerator generator = generator(1, 0, 1);
+        exhaust(generator, SEQUENCE_SIZE);
+        //序列号用完且时钟回拨超过容忍范围,不能借用也不能等待
+        clock.set(BEGIN + 95);
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void startsAfterInheritedTimestamp() {
+        //上一个持有者记录的时间戳下限在当前时钟之后
+        SnowflakeIdGenerator generator = generator(3, 200, 5);
+        long id = generator.nextId();
+        assertEquals(201, timestamp(id));
+    }
+
+    private SnowflakeIdGenerator generator(int workerId, long inheritedLast, long maxDrift) {
+        return new SnowflakeIdGenerator(new FixedLease(workerId, inheritedLast), BEGIN, maxDrift, clock::get);
+    }
+
+    /**
+     * 连续生成n个ID,校验严格递增,返回最后一个
+     */
+    private static long exhaust(SnowflakeIdGenerator generator, long n) {
+        long last = -1;
+        for (long i = 0; i < n; i++) {
+            long id = generator.nextId();
+            if(id <= last) {
+                fail("ID没有递增:" + last + " -> " + id);
+            }
+            last = id;
+        }
+        return last;
+    }
+
+    private static long timestamp(long id) {
+        return id >>> 32;
+    }
+
+    private static long sequence(long id) {
+        return id & (SEQUENCE_SIZE - 1);
+    }
+
+    /**
+     * 固定workerId的租约(不访问Redis)
+     */
+    private static class FixedLease extends WorkerIdLease {
+
+        private final int workerId;
+        private final long inheritedLast;
+
+        FixedLease(int workerId, long inheritedLast) {
+            super(null, SnowflakeIdGenerator.MAX_WORKERS, 60, BEGIN, 5);
+            this.workerId = workerId;
+            this.inheritedLast = inheritedLast;
+        }
+
+        @Override
+        public int getWorkerId() {
+            return workerId;
+        }
+
+        @Override
+        public long getInheritedLast() {
+            return inheritedLast;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+}